@@ -0,0 +1,33 @@
+package com.nitzer.campsitereservation.benchmarks;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvailabilityBenchmarks {
+
+	@Benchmark
+	public List<LocalDate> getAvailableDates(ReservationDataSet data) {
+		return data.service.getAvailableDates(Reservation.DEFAULT_SITE, data.dateFrom, data.dateTo);
+	}
+
+	@Benchmark
+	public boolean existsOverlappingReservation(ReservationDataSet data) {
+		return data.repository.existsOverlappingReservation(Reservation.DEFAULT_SITE, data.dateFrom, data.dateTo, null);
+	}
+}
@@ -0,0 +1,75 @@
+package com.nitzer.campsitereservation.benchmarks;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nitzer.campsitereservation.entities.Reservation;
+
+/*
+ * Response serialization with an ObjectMapper configured the way Spring Boot configures the
+ * one used by the controllers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmarks {
+
+	@Param({ "P1M", "P3M", "P1Y", "P2Y" })
+	public String window;
+
+	private ObjectMapper objectMapper;
+
+	private Reservation reservation;
+
+	private List<LocalDate> availableDates;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+		LocalDate today = LocalDate.now();
+		this.reservation = new Reservation();
+		this.reservation.setId(UUID.randomUUID());
+		this.reservation.setEmail("guest@test.com");
+		this.reservation.setFullName("Guest");
+		this.reservation.setArrivalDate(today);
+		this.reservation.setDepartureDate(today.plusDays(3));
+		this.reservation.setCheckInDate(today.plusDays(1));
+		this.reservation.setCheckOutDate(today.plusDays(3));
+
+		this.availableDates = today.datesUntil(today.plus(Period.parse(this.window))).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public String serializeReservation() throws JsonProcessingException {
+		return this.objectMapper.writeValueAsString(this.reservation);
+	}
+
+	@Benchmark
+	public String serializeAvailableDates() throws JsonProcessingException {
+		return this.objectMapper.writeValueAsString(this.availableDates);
+	}
+}
@@ -0,0 +1,98 @@
+package com.nitzer.campsitereservation.benchmarks;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.nitzer.campsitereservation.CampsiteReservationApplication;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+import com.nitzer.campsitereservation.services.OccupancyCalendar;
+import com.nitzer.campsitereservation.services.ReservationService;
+
+/*
+ * Application context backed by an in-memory H2 database seeded with one-night reservations,
+ * one every three days, ending two years from today. Older reservations play the role of
+ * booking history.
+ */
+@State(Scope.Benchmark)
+public class ReservationDataSet {
+
+	private static final int SEED_CHUNK = 1000;
+
+	@Param({ "0", "1000", "100000" })
+	public int reservations;
+
+	@Param({ "P1M", "P3M", "P1Y", "P2Y" })
+	public String window;
+
+	public ReservationService service;
+
+	public ReservationRepository repository;
+
+	public LocalDate dateFrom;
+
+	public LocalDate dateTo;
+
+	private ConfigurableApplicationContext context;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.context = new SpringApplicationBuilder(CampsiteReservationApplication.class)
+				.web(WebApplicationType.NONE)
+				.logStartupInfo(false)
+				.properties("spring.main.banner-mode=off",
+						"logging.level.root=WARN",
+						"spring.datasource.url=jdbc:h2:mem:benchmark",
+						"spring.jpa.properties.javax.persistence.validation.mode=none",
+						"spring.jpa.properties.hibernate.jdbc.batch_size=" + SEED_CHUNK)
+				.run();
+		this.service = this.context.getBean(ReservationService.class);
+		this.repository = this.context.getBean(ReservationRepository.class);
+
+		this.dateFrom = LocalDate.now();
+		this.dateTo = this.dateFrom.plus(Period.parse(this.window));
+
+		seed();
+		this.context.getBean(OccupancyCalendar.class).load();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.context.close();
+	}
+
+	private void seed() {
+		LocalDate latest = LocalDate.now().plusYears(2);
+		List<Reservation> chunk = new ArrayList<>(SEED_CHUNK);
+		for (int i = 0; i < this.reservations; i++) {
+			LocalDate checkInDate = latest.minusDays(3L * i);
+
+			Reservation reservation = new Reservation();
+			reservation.setEmail(String.format("guest%s@test.com", i));
+			reservation.setFullName(String.format("Guest %s", i));
+			reservation.setArrivalDate(checkInDate.minusDays(1));
+			reservation.setDepartureDate(checkInDate.plusDays(1));
+			reservation.setCheckInDate(checkInDate);
+			reservation.setCheckOutDate(checkInDate.plusDays(1));
+			chunk.add(reservation);
+
+			if (chunk.size() == SEED_CHUNK) {
+				this.repository.saveAll(chunk);
+				chunk.clear();
+			}
+		}
+		this.repository.saveAll(chunk);
+	}
+}
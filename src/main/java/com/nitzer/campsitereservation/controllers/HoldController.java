@@ -0,0 +1,121 @@
+package com.nitzer.campsitereservation.controllers;
+
+import java.net.URI;
+import java.util.UUID;
+
+import javax.validation.Valid;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.nitzer.campsitereservation.entities.Hold;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.services.HoldService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+
+/*
+ * Holds claim their dates through JPA, so they are not offered when the reservations are kept in
+ * the journal (reservation.write-mode=journal).
+ */
+@Tag(name = "Holds", description = "Dates held for a few minutes while a reservation is paid")
+@ConditionalOnExpression("'${reservation.write-mode:direct}' != 'journal'")
+@AllArgsConstructor
+@RestController
+public class HoldController {
+	
+	private HoldService service;
+	
+	@Operation(summary = "Hold dates", description = "The dates are not available until the hold is confirmed, released or expires")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "201", description = "Hold created succcessfully", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = Hold.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Fail to valid input",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Another reservation or hold exists in the date interval",
+	    content = @Content)})
+	@PostMapping("/hold")
+	public ResponseEntity<Hold> hold(@Valid @RequestBody Reservation reservation) throws RuntimeException {
+		Hold hold = this.service.hold(reservation);
+		
+		URI uri = ServletUriComponentsBuilder.fromCurrentRequest()
+		          .path("/{id}")
+		          .buildAndExpand(hold.getId())
+		          .toUri();
+		
+		return ResponseEntity.created(uri).body(hold);
+	}
+	
+	@Operation(summary = "Get a hold")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "The hold", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = Hold.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Hold not exists or expired",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping("/hold/{id}")
+	public ResponseEntity<Hold> getHold(@Parameter(description = "Hold identifier") @PathVariable UUID id) throws RuntimeException {
+		return ResponseEntity.ok(this.service.getOne(id));
+	}
+	
+	@Operation(summary = "Confirm a hold", description = "Makes a reservation for the held dates")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "201", description = "Reservation created succcessfully", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = Reservation.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Hold not exists or expired",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@PostMapping("/hold/{id}/confirm")
+	public ResponseEntity<Reservation> confirm(@Parameter(description = "Hold identifier") @PathVariable UUID id) throws RuntimeException {
+		Reservation reservation = this.service.confirm(id);
+		
+		URI uri = ServletUriComponentsBuilder.fromCurrentContextPath()
+		          .path("/reservation/{id}")
+		          .buildAndExpand(reservation.getId())
+		          .toUri();
+		
+		return ResponseEntity.created(uri).body(reservation);
+	}
+	
+	@Operation(summary = "Release a hold")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "Hold released succcessfully", 
+	    content = @Content),
+	  @ApiResponse(responseCode = "400", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Hold not exists or already released",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@DeleteMapping("/hold/{id}")
+	public ResponseEntity<Void> release(@Parameter(description = "Hold identifier") @PathVariable UUID id) throws RuntimeException {
+		this.service.release(id);
+		
+		return ResponseEntity.ok().build();
+	}
+}
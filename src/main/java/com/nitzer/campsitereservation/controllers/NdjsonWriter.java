@@ -0,0 +1,48 @@
+package com.nitzer.campsitereservation.controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Writes each value as one line of JSON (newline delimited JSON) directly to the response stream.
+ */
+public class NdjsonWriter<T> implements Consumer<T> {
+
+	public static final MediaType APPLICATION_NDJSON = MediaType.valueOf("application/x-ndjson");
+
+	private static final int FLUSH_EVERY = 256;
+
+	private final JsonGenerator generator;
+
+	private int pending;
+
+	public NdjsonWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+		this.generator = objectMapper.getFactory().createGenerator(out);
+		this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	}
+
+	@Override
+	public void accept(T value) {
+		try {
+			this.generator.writeObject(value);
+			this.generator.writeRaw('\n');
+			if (++this.pending == FLUSH_EVERY) {
+				this.generator.flush();
+				this.pending = 0;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void finish() throws IOException {
+		this.generator.flush();
+	}
+}
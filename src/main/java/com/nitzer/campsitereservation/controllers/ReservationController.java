@@ -2,13 +2,20 @@ package com.nitzer.campsitereservation.controllers;
 
 import java.net.URI;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import javax.validation.Valid;
 
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,11 +23,26 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nitzer.campsitereservation.dto.AvailabilityBitmap;
+import com.nitzer.campsitereservation.dto.AvailabilityFormat;
+import com.nitzer.campsitereservation.dto.AvailabilityRanges;
+import com.nitzer.campsitereservation.dto.BatchMode;
+import com.nitzer.campsitereservation.dto.BatchResult;
+import com.nitzer.campsitereservation.dto.DateRange;
+import com.nitzer.campsitereservation.dto.ReservationPage;
 import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.services.BlockingCallOffloader;
+import com.nitzer.campsitereservation.services.IdempotencyStore;
 import com.nitzer.campsitereservation.services.ReservationService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -38,8 +60,36 @@ import lombok.AllArgsConstructor;
 @RestController
 public class ReservationController {
 	
+	private static final int MAX_PAGE_SIZE = 500;
+	
+	private static final int MAX_BATCH_SIZE = 100;
+	
+	private static final int MAX_WINDOW_NIGHTS = 366;
+	
+	private static final int MAX_WINDOWS = 100;
+	
+	private static final int MAX_SITES = 100;
+	
+	private static final int MAX_AVAILABILITY_NIGHTS = 731;
+	
+	private static final int MAX_STREAM_NIGHTS = 3660;
+	
+	private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+	
+	private static final LocalDate FIRST_DATE = LocalDate.of(1, 1, 1);
+	
+	private static final LocalDate LAST_DATE = LocalDate.of(9999, 12, 31);
+	
 	private ReservationService service;
 	
+	private ObjectMapper objectMapper;
+	
+	private IdempotencyStore idempotencyStore;
+	
+	private BlockingCallOffloader offloader;
+	
 	@Operation(summary = "Check that API is working")
 	@ApiResponses(value = { 
 	  @ApiResponse(responseCode = "200", description = "Welcome message", 
@@ -56,19 +106,27 @@ public class ReservationController {
 		return ResponseEntity.ok("Welcome to campsite reservation API");
 	}
 	
-	@Operation(summary = "Get available dates for reservation")
+	@Operation(summary = "Get available dates for reservation", description = "Free nights are returned as a list of dates by default. "
+			+ "format=ranges (or Accept: application/vnd.campsite.availability-ranges+json) returns free [start, end) ranges, "
+			+ "format=bitmap (or Accept: application/vnd.campsite.availability-bitmap+json) returns a Base64 bitmap of free nights starting at dateFrom")
 	@ApiResponses(value = { 
-	  @ApiResponse(responseCode = "200", description = "List of available dates", 
+	  @ApiResponse(responseCode = "200", description = "Available dates", 
 	    content = { @Content(mediaType = "application/json", 
-	      array = @ArraySchema(schema = @Schema(implementation = LocalDate.class))) }),
-	  @ApiResponse(responseCode = "400", description = "Invalid dates specified",
+	      array = @ArraySchema(schema = @Schema(implementation = LocalDate.class))),
+	      @Content(mediaType = "application/vnd.campsite.availability-ranges+json", 
+	      schema = @Schema(implementation = AvailabilityRanges.class)),
+	      @Content(mediaType = "application/vnd.campsite.availability-bitmap+json", 
+	      schema = @Schema(implementation = AvailabilityBitmap.class)) }),
+	  @ApiResponse(responseCode = "304", description = "Not modified since the ETag sent in If-None-Match",
+	    content = @Content),
+	  @ApiResponse(responseCode = "400", description = "Invalid dates or format specified, or more than " + MAX_AVAILABILITY_NIGHTS + " nights",
 	    content = @Content),
 	  @ApiResponse(responseCode = "404", description = "Not apply",
 	    content = @Content),
 	  @ApiResponse(responseCode = "409", description = "Not apply",
 	    content = @Content)})
 	@GetMapping("/reservation/available")
-	public ResponseEntity<List<?>> getAvailableDates(@Parameter(description = "Date from interval") @RequestParam("dateFrom") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateFrom, @Parameter(description = "Date to interval") @RequestParam("dateTo") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateTo){
+	public ResponseEntity<?> getAvailableDates(@Parameter(description = "Campsite") @RequestParam(name = "siteId", defaultValue = Reservation.DEFAULT_SITE) String siteId, @Parameter(description = "Date from interval") @RequestParam("dateFrom") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateFrom, @Parameter(description = "Date to interval") @RequestParam("dateTo") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateTo, @Parameter(description = "Response format: dates, ranges or bitmap") @RequestParam("format") Optional<String> format, @RequestHeader HttpHeaders headers, WebRequest request){
 		if(dateFrom.isEmpty()) {
 			dateFrom = Optional.of(LocalDate.now());
 		}
@@ -76,8 +134,178 @@ public class ReservationController {
 		if(dateTo.isEmpty()) {
 			dateTo = Optional.of(dateFrom.get().plusMonths(1));
 		}
+		checkWindow(dateFrom.get(), dateTo.get(), MAX_AVAILABILITY_NIGHTS);
+		
+		AvailabilityFormat availabilityFormat = AvailabilityFormat.resolve(format, headers.getAccept());
+		
+		String etag = String.format("\"%s:%s:%s:%s:%s\"", this.service.getCalendarVersion(siteId), siteId, dateFrom.get(), dateTo.get(), availabilityFormat);
+		if(request.checkNotModified(etag)) {
+			return null;
+		}
+		
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).contentType(availabilityFormat.getMediaType());
+		switch(availabilityFormat) {
+		case RANGES:
+			return response.body(this.service.getAvailableRanges(siteId, dateFrom.get(), dateTo.get()));
+		case BITMAP:
+			return response.body(this.service.getAvailableBitmap(siteId, dateFrom.get(), dateTo.get()));
+		default:
+			return response.body(this.service.getAvailableDates(siteId, dateFrom.get(), dateTo.get()));
+		}
+	}
+	
+	@Operation(summary = "Get available dates of several campsites", description = "Free nights of every campsite given, read in parallel. "
+			+ "Without siteId, of every campsite with some reservation and the default one")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "Available dates by campsite", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = Map.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Invalid dates, more than " + MAX_AVAILABILITY_NIGHTS + " nights or too many campsites specified",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping("/reservation/available/sites")
+	public ResponseEntity<Map<String, List<LocalDate>>> getAvailableDatesBySite(@Parameter(description = "Campsites, up to " + MAX_SITES) @RequestParam("siteId") Optional<List<String>> siteIds, @Parameter(description = "Date from interval") @RequestParam("dateFrom") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateFrom, @Parameter(description = "Date to interval") @RequestParam("dateTo") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateTo){
+		List<String> sites = siteIds.orElse(List.of());
+		if(sites.size() > MAX_SITES) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Up to " + MAX_SITES + " campsites can be requested");
+		}
+		LocalDate from = dateFrom.orElse(LocalDate.now());
+		LocalDate to = dateTo.orElse(from.plusMonths(1));
+		checkWindow(from, to, MAX_AVAILABILITY_NIGHTS);
+		
+		return ResponseEntity.ok(this.service.getAvailableDatesBySite(sites, from, to));
+	}
+	
+	@Operation(summary = "Find free windows for a stay", description = "The first windows of the given number of nights that can be reserved, "
+			+ "starting on or after dateFrom, each one after the previous. end is the check-out date")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "Free windows", 
+	    content = { @Content(mediaType = "application/json", 
+	      array = @ArraySchema(schema = @Schema(implementation = DateRange.class))) }),
+	  @ApiResponse(responseCode = "400", description = "Invalid date, nights or limit specified",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping("/reservation/available/windows")
+	public ResponseEntity<List<DateRange>> getFreeWindows(@Parameter(description = "Campsite") @RequestParam(name = "siteId", defaultValue = Reservation.DEFAULT_SITE) String siteId, @Parameter(description = "First check-in date") @RequestParam("dateFrom") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateFrom, @Parameter(description = "Nights of the stay, up to " + MAX_WINDOW_NIGHTS) @RequestParam(name = "nights", defaultValue = "1") int nights, @Parameter(description = "Windows to return, up to " + MAX_WINDOWS) @RequestParam(name = "limit", defaultValue = "5") int limit){
+		if(nights < 1 || nights > MAX_WINDOW_NIGHTS || limit < 1 || limit > MAX_WINDOWS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "nights must be between 1 and " + MAX_WINDOW_NIGHTS + " and limit between 1 and " + MAX_WINDOWS);
+		}
+		
+		return ResponseEntity.ok(this.service.getFreeWindows(siteId, dateFrom.orElse(LocalDate.now()), nights, limit));
+	}
+	
+	@Operation(summary = "Stream available dates for reservation", description = "Same dates as /reservation/available, written one per line as they are produced")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "Available dates as newline delimited JSON", 
+	    content = { @Content(mediaType = "application/x-ndjson", 
+	      schema = @Schema(implementation = LocalDate.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Invalid dates specified, or more than " + MAX_STREAM_NIGHTS + " nights",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping(value = "/reservation/available/stream", produces = "application/x-ndjson")
+	public ResponseEntity<StreamingResponseBody> streamAvailableDates(@Parameter(description = "Campsite") @RequestParam(name = "siteId", defaultValue = Reservation.DEFAULT_SITE) String siteId, @Parameter(description = "Date from interval") @RequestParam("dateFrom") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateFrom, @Parameter(description = "Date to interval") @RequestParam("dateTo") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateTo){
+		LocalDate from = dateFrom.orElse(LocalDate.now());
+		LocalDate to = dateTo.orElse(from.plusMonths(1));
+		checkWindow(from, to, MAX_STREAM_NIGHTS);
+		
+		return ResponseEntity.ok().contentType(NdjsonWriter.APPLICATION_NDJSON).body(out -> {
+			NdjsonWriter<LocalDate> writer = new NdjsonWriter<>(this.objectMapper, out);
+			this.service.streamAvailableDates(siteId, from, to, writer);
+			writer.finish();
+		});
+	}
+	
+	@Operation(summary = "List reservations", description = "Reservations with check-in date in [dateFrom, dateTo), ordered by check-in date. "
+			+ "When there are more, next holds a token to pass as pageToken, with the same filters, to get the following page")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "A page of reservations", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = ReservationPage.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Invalid dates, size or page token specified",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping("/reservation")
+	public CompletableFuture<ResponseEntity<ReservationPage>> getReservations(@Parameter(description = "Campsite, every one by default") @RequestParam("siteId") Optional<String> siteId, @Parameter(description = "Check-in date from (inclusive)") @RequestParam("dateFrom") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateFrom, @Parameter(description = "Check-in date to (exclusive)") @RequestParam("dateTo") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> dateTo, @Parameter(description = "Email of the reservation, ignoring case and surrounding spaces") @RequestParam("email") Optional<String> email, @Parameter(description = "Token returned as next by the previous page") @RequestParam("pageToken") Optional<String> pageToken, @Parameter(description = "Page size, up to " + MAX_PAGE_SIZE) @RequestParam(name = "size", defaultValue = "50") int size){
+		if(size < 1 || size > MAX_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be between 1 and " + MAX_PAGE_SIZE);
+		}
 		
-		return ResponseEntity.ok(this.service.getAvailableDates(dateFrom.get(), dateTo.get()));
+		return this.offloader.supply(() -> ResponseEntity.ok(this.service.getPage(siteId.orElse(null), dateFrom.orElse(FIRST_DATE), dateTo.orElse(LAST_DATE), email.orElse(null), pageToken.orElse(null), size)));
+	}
+	
+	@Operation(summary = "Find my reservations", description = "Reservations made with an email, ignoring case and surrounding spaces, "
+			+ "the first " + ReservationService.MAX_EMAIL_RESULTS + " by check-in date")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "Reservations of the email", 
+	    content = { @Content(mediaType = "application/json", 
+	      array = @ArraySchema(schema = @Schema(implementation = Reservation.class))) }),
+	  @ApiResponse(responseCode = "400", description = "No email specified",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping("/reservation/mine")
+	public CompletableFuture<ResponseEntity<List<Reservation>>> getMyReservations(@Parameter(description = "Email of the reservations") @RequestParam("email") String email){
+		if(email.isBlank()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "email must not be blank");
+		}
+		
+		return this.offloader.supply(() -> ResponseEntity.ok(this.service.getByEmail(email)));
+	}
+	
+	@Operation(summary = "Export all reservations", description = "Every reservation, written one per line while they are read from the database")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "Reservations as newline delimited JSON", 
+	    content = { @Content(mediaType = "application/x-ndjson", 
+	      schema = @Schema(implementation = Reservation.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping(value = "/reservation/export", produces = "application/x-ndjson")
+	public ResponseEntity<StreamingResponseBody> export(){
+		return ResponseEntity.ok().contentType(NdjsonWriter.APPLICATION_NDJSON).body(out -> {
+			NdjsonWriter<Reservation> writer = new NdjsonWriter<>(this.objectMapper, out);
+			this.service.streamAll(writer);
+			writer.finish();
+		});
+	}
+	
+	@Operation(summary = "Get a reservation")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "The reservation", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = Reservation.class)) }),
+	  @ApiResponse(responseCode = "304", description = "Not modified since the ETag sent in If-None-Match",
+	    content = @Content),
+	  @ApiResponse(responseCode = "400", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "404", description = "Reservation not exists",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Not apply",
+	    content = @Content)})
+	@GetMapping("/reservation/{id}")
+	public CompletableFuture<ResponseEntity<Reservation>> getReservation(@Parameter(description = "Reservation identifier") @PathVariable UUID id, WebRequest request) throws RuntimeException {
+		// tagged with its own state, Spring answers 304 when If-None-Match has it
+		return this.offloader.supply(() -> {
+			Reservation reservation = this.service.getOne(id);
+			return ResponseEntity.ok().eTag(String.format("\"%s:%08x\"", id, reservation.hashCode())).body(reservation);
+		});
 	}
 	
 	@Operation(summary = "Make a reservation")
@@ -90,19 +318,86 @@ public class ReservationController {
 	  @ApiResponse(responseCode = "404", description = "Not apply",
 	    content = @Content),
 	  @ApiResponse(responseCode = "409", description = "Another reservation exists in the date interval",
+	    content = @Content),
+	  @ApiResponse(responseCode = "422", description = "Idempotency key already used with a different reservation",
 	    content = @Content)})
 	@PostMapping("/reservation")
-	public ResponseEntity<Reservation> reserve(@Valid @RequestBody Reservation reservation) throws RuntimeException {
+	public CompletableFuture<ResponseEntity<Reservation>> reserve(@Valid @RequestBody Reservation reservation, @Parameter(description = "Client generated key, a retry with the same key gets the outcome of the first request") @RequestHeader(name = IDEMPOTENCY_KEY, required = false) Optional<String> idempotencyKey) throws RuntimeException {
+		// the request is only reachable from its own thread
+		UriComponentsBuilder location = ServletUriComponentsBuilder.fromCurrentRequest().path("/reservation/{id}");
+		if(idempotencyKey.isEmpty()) {
+			return this.offloader.supply(() -> create(reservation, location));
+		}
+		
+		if(idempotencyKey.get().isBlank() || idempotencyKey.get().length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, IDEMPOTENCY_KEY + " must have between 1 and " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+		}
+		
+		List<Object> fingerprint = Arrays.asList(reservation.getId(), reservation.getSiteId(), reservation.getEmail(), reservation.getFullName(),
+				reservation.getArrivalDate(), reservation.getDepartureDate(), reservation.getCheckInDate(), reservation.getCheckOutDate());
+		return this.offloader.supply(() -> this.idempotencyStore.execute(idempotencyKey.get(), fingerprint, () -> create(reservation, location)));
+	}
+	
+	private ResponseEntity<Reservation> create(Reservation reservation, UriComponentsBuilder location) {
 		Reservation newReservation = this.service.reserve(reservation);
 
-		URI uri = ServletUriComponentsBuilder.fromCurrentRequest()
-		          .path("/reservation/{id}")
-		          .buildAndExpand(newReservation.getId())
-		          .toUri();
+		URI uri = location.buildAndExpand(newReservation.getId()).toUri();
 		
 		return ResponseEntity.created(uri).body(newReservation);
 	}
 	
+	@Operation(summary = "Make several reservations", description = "mode=atomic (default) makes every reservation or none, "
+			+ "mode=best-effort makes the ones that can be made. Each item gets the status a single request would have got, "
+			+ "or 424 when it was not made because another item of an atomic batch failed. Every reservation has to be on the same campsite")
+	@ApiResponses(value = { 
+	  @ApiResponse(responseCode = "200", description = "Best-effort batch processed, see the status of each item", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = BatchResult.class)) }),
+	  @ApiResponse(responseCode = "201", description = "Atomic batch, every reservation created succcessfully", 
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = BatchResult.class)) }),
+	  @ApiResponse(responseCode = "400", description = "Fail to valid input or several campsites, nothing was made in atomic mode",
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = BatchResult.class)) }),
+	  @ApiResponse(responseCode = "404", description = "Not apply",
+	    content = @Content),
+	  @ApiResponse(responseCode = "409", description = "Some reservation overlaps another one, nothing was made in atomic mode",
+	    content = { @Content(mediaType = "application/json", 
+	      schema = @Schema(implementation = BatchResult.class)) })})
+	@PostMapping("/reservation/batch")
+	public CompletableFuture<ResponseEntity<BatchResult>> reserveBatch(@RequestBody List<Reservation> reservations, @Parameter(description = "Batch mode: atomic or best-effort") @RequestParam("mode") Optional<String> mode) throws RuntimeException {
+		BatchMode batchMode = BatchMode.resolve(mode);
+		if(reservations.isEmpty() || reservations.size() > MAX_BATCH_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A batch must have between 1 and " + MAX_BATCH_SIZE + " reservations");
+		}
+		if(reservations.stream().map(Reservation::getSiteId).filter(Objects::nonNull).distinct().count() > 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every reservation of a batch must be on the same campsite");
+		}
+		
+		return this.offloader.supply(() -> batchResponse(reservations.size(), batchMode, this.service.reserveBatch(reservations, batchMode)));
+	}
+	
+	/*
+	 * Every night of the window is materialized (and cached by /reservation/available), so its
+	 * length is bounded like the page and batch sizes.
+	 */
+	private static void checkWindow(LocalDate from, LocalDate to, int maxNights) {
+		if(ChronoUnit.DAYS.between(from, to) > maxNights) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Up to " + maxNights + " nights can be requested");
+		}
+	}
+	
+	private static ResponseEntity<BatchResult> batchResponse(int size, BatchMode batchMode, BatchResult result) {
+		if(batchMode == BatchMode.BEST_EFFORT) {
+			return ResponseEntity.ok(result);
+		}
+		if(result.getCreated() == size) {
+			return ResponseEntity.status(HttpStatus.CREATED).body(result);
+		}
+		boolean conflict = result.getItems().stream().anyMatch(i -> i.getStatus() == HttpStatus.CONFLICT.value());
+		return ResponseEntity.status(conflict ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST).body(result);
+	}
+	
 	@Operation(summary = "Modify a reservation")
 	@ApiResponses(value = { 
 	  @ApiResponse(responseCode = "200", description = "Reservation updated succcessfully", 
@@ -115,8 +410,8 @@ public class ReservationController {
 	  @ApiResponse(responseCode = "409", description = "Another reservation exists in the date interval",
 	    content = @Content)})
 	@PutMapping("/reservation/{id}")
-	public ResponseEntity<Reservation> updateBooking(@Valid @RequestBody Reservation booking, @Parameter(description = "Reservation identifier") @PathVariable UUID id) throws RuntimeException {
-		return ResponseEntity.ok(this.service.update(booking,id));
+	public CompletableFuture<ResponseEntity<Reservation>> updateBooking(@Valid @RequestBody Reservation booking, @Parameter(description = "Reservation identifier") @PathVariable UUID id) throws RuntimeException {
+		return this.offloader.supply(() -> ResponseEntity.ok(this.service.update(booking,id)));
 	}
 	
 	@Operation(summary = "Cancel a reservation")
@@ -131,9 +426,10 @@ public class ReservationController {
 	  @ApiResponse(responseCode = "409", description = "Not apply",
 	    content = @Content)})
 	@DeleteMapping("/reservation/{id}")
-	public ResponseEntity<Void> cancel(@Parameter(description = "Reservation identifier") @PathVariable UUID id) throws RuntimeException {
-		this.service.cancel(id);
-		
-		return ResponseEntity.ok().build();
+	public CompletableFuture<ResponseEntity<Void>> cancel(@Parameter(description = "Reservation identifier") @PathVariable UUID id) throws RuntimeException {
+		return this.offloader.supply(() -> {
+			this.service.cancel(id);
+			return ResponseEntity.ok().<Void>build();
+		});
 	}
 }
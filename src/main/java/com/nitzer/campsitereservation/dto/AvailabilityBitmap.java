@@ -0,0 +1,24 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * Bit i of the bitmap is set when the night dateFrom + i is free. Bits are packed little-endian,
+ * eight nights per byte with the first night in the lowest bit, and the bytes are Base64 encoded.
+ * Trailing bytes without any free night are omitted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailabilityBitmap {
+
+	private LocalDate dateFrom;
+
+	private int nights;
+
+	private String bitmap;
+}
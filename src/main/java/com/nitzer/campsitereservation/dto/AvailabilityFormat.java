@@ -0,0 +1,44 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.server.ResponseStatusException;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum AvailabilityFormat {
+
+	DATES(MediaType.APPLICATION_JSON),
+	RANGES(MediaType.valueOf("application/vnd.campsite.availability-ranges+json")),
+	BITMAP(MediaType.valueOf("application/vnd.campsite.availability-bitmap+json"));
+
+	private final MediaType mediaType;
+
+	/*
+	 * The format query parameter wins, otherwise the first vendor media type found in Accept.
+	 */
+	public static AvailabilityFormat resolve(Optional<String> format, List<MediaType> accept) {
+		if (format.isPresent()) {
+			for (AvailabilityFormat candidate : values()) {
+				if (candidate.name().equalsIgnoreCase(format.get())) {
+					return candidate;
+				}
+			}
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown availability format: " + format.get());
+		}
+		for (MediaType mediaType : accept) {
+			for (AvailabilityFormat candidate : values()) {
+				if (candidate != DATES && candidate.mediaType.equalsTypeAndSubtype(mediaType)) {
+					return candidate;
+				}
+			}
+		}
+		return DATES;
+	}
+}
@@ -0,0 +1,20 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailabilityRanges {
+
+	private LocalDate dateFrom;
+
+	private LocalDate dateTo;
+
+	private List<DateRange> free;
+}
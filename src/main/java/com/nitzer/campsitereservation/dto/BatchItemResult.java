@@ -0,0 +1,28 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.util.List;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * Outcome of the item at index in the batch, with the status a single request would have got:
+ * 201 with the reservation made, 400 or 409 with the errors, or 424 when it was not made
+ * because another item of an atomic batch failed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemResult {
+
+	private int index;
+
+	private int status;
+
+	private Reservation reservation;
+
+	private List<String> errors;
+}
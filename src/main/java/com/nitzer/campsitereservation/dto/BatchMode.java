@@ -0,0 +1,34 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.util.Optional;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * ATOMIC makes every reservation of a batch or none, BEST_EFFORT makes the ones that can be made.
+ */
+@Getter
+@AllArgsConstructor
+public enum BatchMode {
+
+	ATOMIC("atomic"),
+	BEST_EFFORT("best-effort");
+
+	private final String value;
+
+	public static BatchMode resolve(Optional<String> mode) {
+		if (mode.isEmpty()) {
+			return ATOMIC;
+		}
+		for (BatchMode candidate : values()) {
+			if (candidate.value.equalsIgnoreCase(mode.get())) {
+				return candidate;
+			}
+		}
+		throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown batch mode: " + mode.get());
+	}
+}
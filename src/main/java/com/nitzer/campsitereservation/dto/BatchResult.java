@@ -0,0 +1,19 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResult {
+
+	private BatchMode mode;
+
+	private int created;
+
+	private List<BatchItemResult> items;
+}
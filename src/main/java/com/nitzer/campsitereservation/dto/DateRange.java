@@ -0,0 +1,20 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * Half-open interval of nights: start included, end excluded.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DateRange {
+
+	private LocalDate start;
+
+	private LocalDate end;
+}
@@ -0,0 +1,23 @@
+package com.nitzer.campsitereservation.dto;
+
+import java.util.List;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One page of reservations ordered by check-in date. next is the continuation token for the
+ * following page, null on the last one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationPage {
+
+	private List<Reservation> items;
+
+	private String next;
+}
@@ -0,0 +1,52 @@
+package com.nitzer.campsitereservation.entities;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One row per day claimed by a reservation, from check-in to check-out (both inclusive,
+ * the same closed interval used by the overlap check). The unique constraint on the day
+ * per site is what prevents two reservations from holding the same date of a site. Holds
+ * claim their days the same way, with the hold id as reservationId.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "booked_dates",
+	uniqueConstraints = @UniqueConstraint(name = "uk_booked_dates_site_day", columnNames = { "site_id", "booked_day" }),
+	indexes = @Index(name = "idx_booked_dates_reservation", columnList = "reservation_id"))
+public class BookedDate {
+
+	@Id
+	@GeneratedValue(generator = "UUID")
+	@GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+	private UUID id;
+
+	@Column(name = "site_id", nullable = false)
+	private String siteId;
+
+	@Column(name = "booked_day", nullable = false)
+	private LocalDate day;
+
+	@Column(name = "reservation_id", nullable = false)
+	private UUID reservationId;
+
+	public BookedDate(String siteId, LocalDate day, UUID reservationId) {
+		this.siteId = siteId;
+		this.day = day;
+		this.reservationId = reservationId;
+	}
+}
@@ -0,0 +1,43 @@
+package com.nitzer.campsitereservation.entities;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * The [dateFrom, dateTo) nights of a site changed by a write, inserted in the same transaction.
+ * seq grows with every change, a calendar snapshot is current up to some seq.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "calendar_changes")
+public class CalendarChange {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long seq;
+
+	@Column(name = "site_id", nullable = false)
+	private String siteId;
+
+	@Column(name = "date_from", nullable = false)
+	private LocalDate dateFrom;
+
+	@Column(name = "date_to", nullable = false)
+	private LocalDate dateTo;
+
+	public CalendarChange(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		this.siteId = siteId;
+		this.dateFrom = dateFrom;
+		this.dateTo = dateTo;
+	}
+}
@@ -0,0 +1,33 @@
+package com.nitzer.campsitereservation.entities;
+
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * Single row created by the migration. storeId tells this database from any other, watermark is
+ * the change seq of the last calendar snapshot written, older snapshots are no longer complete.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "calendar_checkpoint")
+public class CalendarCheckpoint {
+
+	public static final int ID = 1;
+
+	@Id
+	private Integer id;
+
+	@Column(name = "store_id", nullable = false)
+	private UUID storeId;
+
+	@Column(nullable = false)
+	private long watermark;
+}
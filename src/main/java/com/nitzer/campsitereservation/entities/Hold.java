@@ -0,0 +1,79 @@
+package com.nitzer.campsitereservation.entities;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * Dates of a reservation kept aside until expiresAt. It claims its days like a reservation
+ * and is either confirmed into one or released, by the client or when it expires.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "holds", indexes = @Index(name = "idx_holds_site_check_out_in", columnList = "site_id, check_out_date, check_in_date"))
+public class Hold {
+
+	@Id
+	@GeneratedValue(generator = "UUID")
+	@GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+	private UUID id;
+
+	@Column(name = "site_id", nullable = false)
+	private String siteId;
+
+	@Column(name = "check_in_date", nullable = false)
+	private LocalDate checkInDate;
+
+	@Column(name = "check_out_date", nullable = false)
+	private LocalDate checkOutDate;
+
+	@Column(name = "arrival_date", nullable = false)
+	private LocalDate arrivalDate;
+
+	@Column(name = "departure_date", nullable = false)
+	private LocalDate departureDate;
+
+	private String email;
+
+	@Column(name = "full_name")
+	private String fullName;
+
+	@Column(name = "expires_at", nullable = false)
+	private Instant expiresAt;
+
+	public Hold(Reservation reservation, Instant expiresAt) {
+		this.siteId = reservation.getSiteId();
+		this.checkInDate = reservation.getCheckInDate();
+		this.checkOutDate = reservation.getCheckOutDate();
+		this.arrivalDate = reservation.getArrivalDate();
+		this.departureDate = reservation.getDepartureDate();
+		this.email = reservation.getEmail();
+		this.fullName = reservation.getFullName();
+		this.expiresAt = expiresAt;
+	}
+
+	public Reservation toReservation() {
+		Reservation reservation = new Reservation();
+		reservation.setSiteId(this.siteId);
+		reservation.setCheckInDate(this.checkInDate);
+		reservation.setCheckOutDate(this.checkOutDate);
+		reservation.setArrivalDate(this.arrivalDate);
+		reservation.setDepartureDate(this.departureDate);
+		reservation.setEmail(this.email);
+		reservation.setFullName(this.fullName);
+		return reservation;
+	}
+}
@@ -1,12 +1,16 @@
 package com.nitzer.campsitereservation.entities;
 
 import java.time.LocalDate;
+import java.util.Locale;
 import java.util.UUID;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.Future;
@@ -15,24 +19,43 @@ import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Where;
 import org.hibernate.validator.constraints.Length;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.nitzer.campsitereservation.entities.contraints.ValidReservationDateInterval;
 import com.nitzer.campsitereservation.entities.contraints.ValidReservationLength;
 
 import lombok.Data;
 
+/*
+ * Cancelled reservations stay in bookings until they are archived, every JPQL query on the
+ * entity only sees the active ones.
+ */
 @Data
 @Entity
-@Table(name="bookings")
+@Table(name="bookings", indexes = {
+		@Index(name = "idx_bookings_site_check_out_in", columnList = "site_id, check_out_date, check_in_date, status"),
+		@Index(name = "idx_bookings_site_check_in_id", columnList = "site_id, check_in_date, id"),
+		@Index(name = "idx_bookings_check_in_id", columnList = "check_in_date, id"),
+		@Index(name = "idx_bookings_status_check_out", columnList = "status, check_out_date"),
+		@Index(name = "idx_bookings_email_check_in_id", columnList = "email_normalized, check_in_date, id") })
+@Where(clause = "status = 'ACTIVE'")
 @ValidReservationLength
 @ValidReservationDateInterval
 public class Reservation {
 	
+	public static final String DEFAULT_SITE = "default";
+	
 	@Id
 	@GeneratedValue(generator = "UUID")
 	@GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
 	private UUID id;
+	
+	@Column(name = "site_id")
+	@NotEmpty(message = "You must specify a site")
+	@Length(max = 64)
+	private String siteId = DEFAULT_SITE;
 
 	@FutureOrPresent(message = "Check-in date must be greater or equals than today")
 	@Column(name="check_in_date")
@@ -57,10 +80,35 @@ public class Reservation {
 	@Email(message = "Invalid email format")
 	@Length(max = 320)
 	private String email;
+	
+	/*
+	 * Kept by setEmail, the column the lookups by email are answered from.
+	 */
+	@JsonIgnore
+	@Column(name = "email_normalized")
+	private String emailNormalized;
 
 	@Column(name = "full_name")
 	@NotEmpty(message="You must enter your full name")
 	@Length(max=100)
 	private String fullName;
 	
+	@JsonIgnore
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false)
+	private ReservationStatus status = ReservationStatus.ACTIVE;
+	
+	public void setEmail(String email) {
+		this.email = email;
+		this.emailNormalized = normalizeEmail(email);
+	}
+	
+	/*
+	 * Surrounding whitespace removed and lower-cased. The only place emails are normalized, the
+	 * V9 migration uses it as well for the rows stored before.
+	 */
+	public static String normalizeEmail(String email) {
+		return email == null ? null : email.strip().toLowerCase(Locale.ROOT);
+	}
+	
 }
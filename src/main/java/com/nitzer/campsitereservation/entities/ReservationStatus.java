@@ -0,0 +1,11 @@
+package com.nitzer.campsitereservation.entities;
+
+/*
+ * Reservations are ACTIVE until cancelled. CHECKED_OUT is only found in bookings_archive, for
+ * the active reservations archived after their check-out date.
+ */
+public enum ReservationStatus {
+	ACTIVE,
+	CANCELLED,
+	CHECKED_OUT
+}
@@ -0,0 +1,16 @@
+package com.nitzer.campsitereservation.exceptions;
+
+import java.util.UUID;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_FOUND)
+public class HoldNotFoundException extends RuntimeException{
+
+    private static final long serialVersionUID = 1L;
+
+    public HoldNotFoundException(UUID id){
+        super(String.format("Hold with id %s not found or expired",id));
+    }
+}
@@ -0,0 +1,14 @@
+package com.nitzer.campsitereservation.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY)
+public class IdempotencyKeyReusedException extends RuntimeException{
+
+    private static final long serialVersionUID = 1L;
+
+    public IdempotencyKeyReusedException(String key){
+        super(String.format("Idempotency key %s was already used with a different request", key));
+    }
+}
@@ -0,0 +1,14 @@
+package com.nitzer.campsitereservation.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidPageTokenException extends RuntimeException{
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidPageTokenException(String token){
+        super(String.format("Invalid page token %s", token));
+    }
+}
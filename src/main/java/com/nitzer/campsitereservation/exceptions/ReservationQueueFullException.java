@@ -0,0 +1,14 @@
+package com.nitzer.campsitereservation.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ReservationQueueFullException extends RuntimeException{
+
+    private static final long serialVersionUID = 1L;
+
+    public ReservationQueueFullException(int capacity){
+        super(String.format("Too many reservation requests are pending (%s), please try again", capacity));
+    }
+}
@@ -3,6 +3,8 @@ package com.nitzer.campsitereservation.exceptions;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,29 +17,80 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @ControllerAdvice
 public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionHandler {
 
+	@Autowired
+	private MeterRegistry registry;
+
 	@ExceptionHandler(value = OverlappingDatesException.class)
 	@ResponseStatus(HttpStatus.CONFLICT)
 	protected ResponseEntity<Object> handleConflict(final RuntimeException ex, final WebRequest request) {
 		ApiError apiError = new ApiError(ex.getMessage());
 		HttpHeaders headers = new HttpHeaders();
 		
-
+		count(ex, HttpStatus.CONFLICT);
 		return handleExceptionInternal(ex, apiError, headers, HttpStatus.CONFLICT, request);
 	}
 
-	@ExceptionHandler(value = ReservationNotFoundException.class)
+	@ExceptionHandler(value = { ReservationNotFoundException.class, HoldNotFoundException.class })
 	@ResponseStatus(HttpStatus.NOT_FOUND)
 	protected ResponseEntity<Object> handleNotFound(final RuntimeException ex, final WebRequest request) {
 		ApiError apiError = new ApiError(ex.getMessage());
 
 		HttpHeaders headers = new HttpHeaders();
 		
+		count(ex, HttpStatus.NOT_FOUND);
 		return handleExceptionInternal(ex, apiError, headers , HttpStatus.NOT_FOUND, request);
 	}
 
+	@ExceptionHandler(value = InvalidPageTokenException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	protected ResponseEntity<Object> handleInvalidPageToken(final RuntimeException ex, final WebRequest request) {
+		ApiError apiError = new ApiError(ex.getMessage());
+
+		HttpHeaders headers = new HttpHeaders();
+		
+		return handleExceptionInternal(ex, apiError, headers , HttpStatus.BAD_REQUEST, request);
+	}
+
+	@ExceptionHandler(value = IdempotencyKeyReusedException.class)
+	@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+	protected ResponseEntity<Object> handleIdempotencyKeyReused(final RuntimeException ex, final WebRequest request) {
+		ApiError apiError = new ApiError(ex.getMessage());
+
+		HttpHeaders headers = new HttpHeaders();
+		
+		return handleExceptionInternal(ex, apiError, headers , HttpStatus.UNPROCESSABLE_ENTITY, request);
+	}
+
+	@ExceptionHandler(value = TransientDataAccessException.class)
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	protected ResponseEntity<Object> handleTransientFailure(final RuntimeException ex, final WebRequest request) {
+		ApiError apiError = new ApiError("The reservation could not be processed due to concurrent requests, please try again");
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, "1");
+		
+		// lock timeouts, deadlocks and serialization failures that were still failing after the retries
+		count(ex, HttpStatus.SERVICE_UNAVAILABLE);
+		return handleExceptionInternal(ex, apiError, headers , HttpStatus.SERVICE_UNAVAILABLE, request);
+	}
+
+	@ExceptionHandler(value = ReservationQueueFullException.class)
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	protected ResponseEntity<Object> handleQueueFull(final RuntimeException ex, final WebRequest request) {
+		ApiError apiError = new ApiError(ex.getMessage());
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, "1");
+		
+		return handleExceptionInternal(ex, apiError, headers , HttpStatus.SERVICE_UNAVAILABLE, request);
+	}
+
 	@Override
 	protected ResponseEntity<Object> handleMethodArgumentNotValid(final MethodArgumentNotValidException ex,
 			final HttpHeaders headers, final HttpStatus status, final WebRequest request) {
@@ -51,4 +104,13 @@ public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionH
 		final ApiError apiError = new ApiError(errors);
 		return handleExceptionInternal(ex, apiError, headers, HttpStatus.BAD_REQUEST, request);
 	}
+
+	private void count(RuntimeException ex, HttpStatus status) {
+		Counter.builder("reservation.errors")
+				.description("Requests answered with an error by the exception handler")
+				.tag("status", String.valueOf(status.value()))
+				.tag("exception", ex.getClass().getSimpleName())
+				.register(this.registry)
+				.increment();
+	}
 }
\ No newline at end of file
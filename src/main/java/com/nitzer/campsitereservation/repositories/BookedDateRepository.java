@@ -0,0 +1,27 @@
+package com.nitzer.campsitereservation.repositories;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.nitzer.campsitereservation.entities.BookedDate;
+
+@Repository
+public interface BookedDateRepository extends JpaRepository<BookedDate, UUID> {
+
+	@Query("SELECT d.day from BookedDate d WHERE d.siteId = :siteId and d.day >= :dateFrom and d.day <= :dateTo")
+	public List<LocalDate> findClaimedDays(String siteId, LocalDate dateFrom, LocalDate dateTo);
+
+	@Modifying
+	@Query("DELETE from BookedDate d WHERE d.reservationId = :reservationId")
+	public int deleteByReservationId(UUID reservationId);
+
+	@Modifying
+	@Query("DELETE from BookedDate d WHERE d.reservationId in :reservationIds")
+	public int deleteByReservationIds(List<UUID> reservationIds);
+}
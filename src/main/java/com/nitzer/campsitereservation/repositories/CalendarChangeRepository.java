@@ -0,0 +1,26 @@
+package com.nitzer.campsitereservation.repositories;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.nitzer.campsitereservation.entities.CalendarChange;
+
+@Repository
+public interface CalendarChangeRepository extends JpaRepository<CalendarChange, Long> {
+
+	@Query("SELECT coalesce(max(c.seq), 0) from CalendarChange c")
+	public long findLastSeq();
+
+	@Query("SELECT c from CalendarChange c WHERE c.seq > :seq ORDER BY c.seq")
+	public List<CalendarChange> findAfter(long seq);
+
+	@Transactional
+	@Modifying
+	@Query("DELETE from CalendarChange c WHERE c.seq <= :seq")
+	public int deleteUpTo(long seq);
+}
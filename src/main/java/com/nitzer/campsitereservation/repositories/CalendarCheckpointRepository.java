@@ -0,0 +1,10 @@
+package com.nitzer.campsitereservation.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.nitzer.campsitereservation.entities.CalendarCheckpoint;
+
+@Repository
+public interface CalendarCheckpointRepository extends JpaRepository<CalendarCheckpoint, Integer> {
+}
@@ -0,0 +1,18 @@
+package com.nitzer.campsitereservation.repositories;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.nitzer.campsitereservation.entities.Hold;
+
+@Repository
+public interface HoldRepository extends JpaRepository<Hold, UUID> {
+
+	@Query("SELECT h from Hold h WHERE h.siteId = :siteId and :dateFrom <= h.checkOutDate and :dateTo >= h.checkInDate")
+	public List<Hold> findByDateInterval(String siteId, LocalDate dateFrom, LocalDate dateTo);
+}
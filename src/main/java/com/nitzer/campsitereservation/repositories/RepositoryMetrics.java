@@ -0,0 +1,62 @@
+package com.nitzer.campsitereservation.repositories;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Times every call to the repositories of this package, tagged with the repository and method.
+ * Spring Data only records repository metrics from Boot 2.5 on, so the repository proxies are
+ * wrapped here instead.
+ */
+@Component
+public class RepositoryMetrics implements BeanPostProcessor {
+
+	private final ObjectProvider<MeterRegistry> registry;
+
+	public RepositoryMetrics(ObjectProvider<MeterRegistry> registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (!(bean instanceof Repository)) {
+			return bean;
+		}
+		Class<?> repository = ClassUtils.getAllInterfacesAsSet(bean).stream()
+				.filter(i -> i.getPackageName().equals(RepositoryMetrics.class.getPackageName()))
+				.findFirst()
+				.orElse(null);
+		if (repository == null) {
+			return bean;
+		}
+
+		ProxyFactory proxy = new ProxyFactory(bean);
+		proxy.addAdvice((MethodInterceptor) invocation -> {
+			Timer.Sample sample = Timer.start(this.registry.getObject());
+			String exception = "none";
+			try {
+				return invocation.proceed();
+			} catch (Throwable e) {
+				exception = e.getClass().getSimpleName();
+				throw e;
+			} finally {
+				sample.stop(Timer.builder("reservation.repository")
+						.description("Repository calls by repository and method")
+						.tag("repository", repository.getSimpleName())
+						.tag("method", invocation.getMethod().getName())
+						.tag("exception", exception)
+						.publishPercentileHistogram()
+						.register(this.registry.getObject()));
+			}
+		});
+		return proxy.getProxy();
+	}
+}
@@ -0,0 +1,698 @@
+package com.nitzer.campsitereservation.repositories;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Event-sourced store of the reservations (reservation.write-mode=journal). Every reserve,
+ * update and cancel is appended as a binary record to a memory-mapped file and applied to the
+ * reservations kept in memory, which are rebuilt by replaying the file on startup. Nothing is
+ * ever deleted, so the file is also the history of every change.
+ *
+ * Record: payload length and CRC32 (ints), then the type (byte), time (epoch millis, long) and
+ * id (two longs). A reservation adds the site, email and full name (short length plus UTF-8,
+ * length -1 for null) and the arrival, check-in, check-out and departure dates (epoch days, ints), an update only
+ * the dates. Replay stops at the first record that is empty or does not match its CRC, the
+ * tail a crash left half written.
+ *
+ * Writes run one at a time. With reservation.journal.sync=true (the default) a write returns
+ * once the file has been forced to disk, and the writes that arrive during a force share the
+ * next one (group commit). Until then it is only pending: later writes are checked against it,
+ * but the finders and the listeners only get it once it is on disk, so nothing a crash can lose
+ * is ever read. Closing forces what is left and only then releases the writes still waiting,
+ * new writes are refused from then on. With sync=false the file is forced every flush-interval, a write is applied as
+ * soon as it is appended, as it is acknowledged then, and a crash can lose the writes of the
+ * last interval.
+ *
+ * The finders answer like the ReservationRepository ones of the same name. Stored reservations
+ * are never modified, a change replaces them.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "reservation.write-mode", havingValue = "journal")
+public class ReservationJournal {
+
+	private static final int MAGIC = 0x43524a31;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_SIZE = 8;
+
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final byte RESERVED = 1;
+
+	private static final byte UPDATED = 2;
+
+	private static final byte CANCELLED = 3;
+
+	private static final UUID MIN_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+
+	private static final UUID MAX_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+	private static final Comparator<Reservation> BY_CHECK_IN = Comparator.comparing(Reservation::getCheckInDate).thenComparing(Reservation::getId);
+
+	/*
+	 * Called with the reservation before and after every write, null before a reservation and
+	 * after a cancellation, once it has been applied. Listeners run in journal order while no
+	 * other write can run.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		void changed(Reservation before, Reservation after);
+	}
+
+	private final Path path;
+
+	private final boolean sync;
+
+	private final long flushInterval;
+
+	private final int initialSize;
+
+	private final Timer forceTimer;
+
+	private final ConcurrentMap<UUID, Reservation> byId = new ConcurrentHashMap<>();
+
+	private final NavigableSet<Reservation> byCheckIn = new ConcurrentSkipListSet<>(BY_CHECK_IN);
+
+	private final ConcurrentMap<String, NavigableSet<Reservation>> bySite = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, NavigableSet<Reservation>> byEmail = new ConcurrentHashMap<>();
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	// guarded by this
+	private final Deque<Change> pending = new ArrayDeque<>();
+
+	private FileChannel channel;
+
+	private MappedByteBuffer buffer;
+
+	private int position;
+
+	private int forced;
+
+	private boolean running;
+
+	private boolean closed;
+
+	private Thread flusher;
+
+	public ReservationJournal(MeterRegistry registry,
+			@Value("${reservation.journal.path:data/reservations.journal}") String path,
+			@Value("${reservation.journal.sync:true}") boolean sync,
+			@Value("${reservation.journal.flush-interval:200}") long flushInterval,
+			@Value("${reservation.journal.initial-size:16777216}") int initialSize) {
+		this.path = Paths.get(path);
+		this.sync = sync;
+		this.flushInterval = flushInterval;
+		this.initialSize = Math.max(initialSize, HEADER_SIZE);
+		this.forceTimer = Timer.builder("reservation.journal.force")
+				.description("Forces of the reservation journal to disk, each one covering every write before it")
+				.publishPercentileHistogram()
+				.register(registry);
+	}
+
+	@PostConstruct
+	public synchronized void open() throws IOException {
+		if (this.path.getParent() != null) {
+			Files.createDirectories(this.path.getParent());
+		}
+		this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		boolean created = this.channel.size() == 0;
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(this.initialSize, this.channel.size()));
+
+		if (created) {
+			this.buffer.putInt(0, MAGIC);
+			this.buffer.putInt(4, FORMAT_VERSION);
+			this.buffer.force();
+		} else if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IllegalStateException(this.path + " is not a reservation journal");
+		}
+		int records = replay();
+		this.forced = this.position;
+		log.info("Reservation journal {} replayed, {} records, {} reservations", this.path, records, this.byId.size());
+
+		this.running = true;
+		this.flusher = new Thread(this::flushLoop, "reservation-journal-flush");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	@PreDestroy
+	public void close() throws IOException, InterruptedException {
+		synchronized (this) {
+			this.running = false;
+			notifyAll();
+		}
+		this.flusher.join();
+		synchronized (this) {
+			try {
+				this.buffer.force();
+				this.forced = this.position;
+				publishForced();
+			} finally {
+				this.closed = true;
+				notifyAll();
+				this.channel.close();
+			}
+		}
+	}
+
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	public Optional<Reservation> findById(UUID id) {
+		return Optional.ofNullable(this.byId.get(id));
+	}
+
+	public List<Reservation> findAll() {
+		return new ArrayList<>(this.byCheckIn);
+	}
+
+	public Stream<Reservation> streamAll() {
+		return this.byCheckIn.stream();
+	}
+
+	/*
+	 * Reservations of a normalized email in check-in order.
+	 */
+	public List<Reservation> findByEmail(String email, Pageable pageable) {
+		return this.byEmail.getOrDefault(email, Collections.emptyNavigableSet()).stream()
+				.limit(pageable.getPageSize())
+				.collect(Collectors.toList());
+	}
+
+	public List<Reservation> findPage(LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable) {
+		return page(this.byCheckIn.tailSet(probe(dateFrom, MIN_ID), true), dateTo, email, pageable);
+	}
+
+	public List<Reservation> findPageAfter(LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable) {
+		return page(this.byCheckIn.tailSet(probe(afterCheckIn, afterId), false), dateTo, email, pageable);
+	}
+
+	public List<Reservation> findSitePage(String siteId, LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable) {
+		return page(site(siteId).tailSet(probe(dateFrom, MIN_ID), true), dateTo, email, pageable);
+	}
+
+	public List<Reservation> findSitePageAfter(String siteId, LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable) {
+		return page(site(siteId).tailSet(probe(afterCheckIn, afterId), false), dateTo, email, pageable);
+	}
+
+	/*
+	 * Days in [dateFrom, dateTo] within the [checkIn, checkOut] of some reservation of the site,
+	 * the days BookedDateRepository would return.
+	 */
+	public List<LocalDate> findClaimedDays(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		List<LocalDate> claimed = new ArrayList<>();
+		for (Reservation reservation : overlapping(siteId, dateFrom, dateTo)) {
+			LocalDate from = reservation.getCheckInDate().isAfter(dateFrom) ? reservation.getCheckInDate() : dateFrom;
+			LocalDate to = reservation.getCheckOutDate().isBefore(dateTo) ? reservation.getCheckOutDate() : dateTo;
+			from.datesUntil(to.plusDays(1)).forEach(claimed::add);
+		}
+		return claimed;
+	}
+
+	/*
+	 * Assigns a new id to the reservation, as saving it through JPA would.
+	 */
+	public Reservation reserve(Reservation reservation) {
+		return reserveAll(List.of(reservation)).get(0);
+	}
+
+	/*
+	 * Every reservation or none, the room for all their records is made before the first one is
+	 * written. The caller has already checked they do not overlap each other.
+	 */
+	public List<Reservation> reserveAll(List<Reservation> reservations) {
+		int end;
+		synchronized (this) {
+			for (Reservation reservation : reservations) {
+				checkFree(reservation.getSiteId(), reservation.getCheckInDate(), reservation.getCheckOutDate(), null);
+			}
+			List<Reservation> stored = new ArrayList<>(reservations.size());
+			for (Reservation reservation : reservations) {
+				Reservation copy = copy(reservation);
+				copy.setId(UUID.randomUUID());
+				stored.add(copy);
+			}
+			append(RESERVED, stored);
+			for (int i = 0; i < reservations.size(); i++) {
+				reservations.get(i).setId(stored.get(i).getId());
+			}
+			end = this.position;
+			stored.forEach(r -> changed(null, r, end));
+		}
+		awaitDurable(end);
+		return reservations;
+	}
+
+	/*
+	 * Moves the reservation to the check-in, check-out, arrival and departure dates of the given
+	 * one. The site does not change.
+	 */
+	public Reservation update(Reservation reservation, UUID id) {
+		Reservation updated;
+		int end;
+		synchronized (this) {
+			Reservation current = latest(id);
+			if (current == null) {
+				throw new ReservationNotFoundException(id);
+			}
+			checkFree(current.getSiteId(), reservation.getCheckInDate(), reservation.getCheckOutDate(), id);
+
+			updated = copy(current);
+			updated.setArrivalDate(reservation.getArrivalDate());
+			updated.setCheckInDate(reservation.getCheckInDate());
+			updated.setCheckOutDate(reservation.getCheckOutDate());
+			updated.setDepartureDate(reservation.getDepartureDate());
+			append(UPDATED, List.of(updated));
+			end = this.position;
+			changed(current, updated, end);
+		}
+		awaitDurable(end);
+		return updated;
+	}
+
+	public void cancel(UUID id) {
+		int end;
+		synchronized (this) {
+			Reservation current = latest(id);
+			if (current == null) {
+				throw new ReservationNotFoundException(id);
+			}
+			append(CANCELLED, List.of(current));
+			end = this.position;
+			changed(current, null, end);
+		}
+		awaitDurable(end);
+	}
+
+	private List<Reservation> page(NavigableSet<Reservation> from, LocalDate dateTo, String email, Pageable pageable) {
+		List<Reservation> page = new ArrayList<>(pageable.getPageSize());
+		for (Reservation reservation : from) {
+			if (!reservation.getCheckInDate().isBefore(dateTo) || page.size() == pageable.getPageSize()) {
+				break;
+			}
+			if (email == null || email.equals(reservation.getEmailNormalized())) {
+				page.add(reservation);
+			}
+		}
+		return page;
+	}
+
+	/*
+	 * Reservations of the site whose [checkIn, checkOut] intersects [dateFrom, dateTo], latest
+	 * first. They do not overlap each other, so ordered by check-in they are ordered by check-out
+	 * as well and the walk stops at the first one that ends before dateFrom.
+	 */
+	private List<Reservation> overlapping(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		List<Reservation> overlapping = new ArrayList<>();
+		Iterator<Reservation> candidates = site(siteId).headSet(probe(dateTo, MAX_ID), true).descendingIterator();
+		while (candidates.hasNext()) {
+			Reservation candidate = candidates.next();
+			if (candidate.getCheckOutDate().isBefore(dateFrom)) {
+				break;
+			}
+			overlapping.add(candidate);
+		}
+		return overlapping;
+	}
+
+	/*
+	 * Checked against the applied reservations as the pending changes leave them.
+	 */
+	private void checkFree(String siteId, LocalDate checkInDate, LocalDate checkOutDate, UUID ignored) {
+		Map<UUID, Reservation> changed = new HashMap<>();
+		this.pending.forEach(c -> changed.put(c.id(), c.after));
+		boolean taken = Stream.concat(
+				overlapping(siteId, checkInDate, checkOutDate).stream().filter(r -> !changed.containsKey(r.getId())),
+				changed.values().stream().filter(r -> r != null && r.getSiteId().equals(siteId)
+						&& !r.getCheckInDate().isAfter(checkOutDate) && !r.getCheckOutDate().isBefore(checkInDate)))
+				.anyMatch(r -> !r.getId().equals(ignored));
+		if (taken) {
+			throw new OverlappingDatesException(checkInDate, checkOutDate);
+		}
+	}
+
+	/*
+	 * The reservation as every write appended so far leaves it, pending or not, null when there
+	 * is none.
+	 */
+	private Reservation latest(UUID id) {
+		for (Iterator<Change> changes = this.pending.descendingIterator(); changes.hasNext();) {
+			Change change = changes.next();
+			if (change.id().equals(id)) {
+				return change.after;
+			}
+		}
+		return this.byId.get(id);
+	}
+
+	private void changed(Reservation before, Reservation after, int end) {
+		if (this.sync) {
+			this.pending.add(new Change(before, after, end));
+		} else {
+			publish(before, after);
+		}
+	}
+
+	/*
+	 * Applies the pending changes the last force covered, in journal order.
+	 */
+	private void publishForced() {
+		while (!this.pending.isEmpty() && this.pending.peek().end <= this.forced) {
+			Change change = this.pending.poll();
+			publish(change.before, change.after);
+		}
+	}
+
+	private void publish(Reservation before, Reservation after) {
+		apply(before, after);
+		this.listeners.forEach(l -> l.changed(before, after));
+	}
+
+	private void apply(Reservation before, Reservation after) {
+		if (before != null) {
+			this.byId.remove(before.getId());
+			this.byCheckIn.remove(before);
+			site(before.getSiteId()).remove(before);
+			if (before.getEmailNormalized() != null) {
+				this.byEmail.computeIfPresent(before.getEmailNormalized(), (email, reservations) -> {
+					reservations.remove(before);
+					return reservations.isEmpty() ? null : reservations;
+				});
+			}
+		}
+		if (after != null) {
+			this.byId.put(after.getId(), after);
+			this.byCheckIn.add(after);
+			site(after.getSiteId()).add(after);
+			if (after.getEmailNormalized() != null) {
+				this.byEmail.computeIfAbsent(after.getEmailNormalized(), email -> new ConcurrentSkipListSet<>(BY_CHECK_IN)).add(after);
+			}
+		}
+	}
+
+	private NavigableSet<Reservation> site(String siteId) {
+		return this.bySite.computeIfAbsent(siteId, id -> new ConcurrentSkipListSet<>(BY_CHECK_IN));
+	}
+
+	/*
+	 * One record per reservation, all of them or none: the file is grown for the whole lot before
+	 * the first one is written, which is the only step that can fail.
+	 */
+	private void append(byte type, List<Reservation> reservations) {
+		if (!this.running) {
+			throw new IllegalStateException("Reservation journal " + this.path + " is closed");
+		}
+		List<ByteBuffer> payloads = reservations.stream().map(r -> encode(type, r)).collect(Collectors.toList());
+		ensureCapacity(payloads.stream().mapToLong(p -> RECORD_HEADER_SIZE + p.remaining()).sum());
+		payloads.forEach(this::write);
+		if (this.sync) {
+			notifyAll();
+		}
+	}
+
+	/*
+	 * The payload and its CRC go first and the length last, so a record is not readable until
+	 * it has been completely written.
+	 */
+	private void write(ByteBuffer payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+		ByteBuffer record = this.buffer.duplicate();
+		record.position(this.position + RECORD_HEADER_SIZE);
+		record.put(payload.duplicate());
+		this.buffer.putInt(this.position + 4, (int) crc.getValue());
+		this.buffer.putInt(this.position, payload.remaining());
+		this.position += RECORD_HEADER_SIZE + payload.remaining();
+	}
+
+	private void ensureCapacity(long size) {
+		if (this.position + size <= this.buffer.capacity()) {
+			return;
+		}
+		long capacity = Math.min(Integer.MAX_VALUE, Math.max(2L * this.buffer.capacity(), this.position + size));
+		if (this.position + size > capacity) {
+			throw new IllegalStateException("Reservation journal " + this.path + " is full");
+		}
+		try {
+			// both mappings share the pages of the file, forcing the new one writes what went through the old one
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private int replay() {
+		int records = 0;
+		this.position = HEADER_SIZE;
+		while (this.position + RECORD_HEADER_SIZE <= this.buffer.capacity()) {
+			int length = this.buffer.getInt(this.position);
+			if (length <= 0 || this.position + RECORD_HEADER_SIZE + (long) length > this.buffer.capacity()) {
+				break;
+			}
+			ByteBuffer payload = this.buffer.duplicate();
+			payload.position(this.position + RECORD_HEADER_SIZE).limit(this.position + RECORD_HEADER_SIZE + length);
+			CRC32 crc = new CRC32();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != this.buffer.getInt(this.position + 4)) {
+				log.warn("Reservation journal {} has a damaged record at {}, replay stops there", this.path, this.position);
+				break;
+			}
+			decode(payload);
+			this.position += RECORD_HEADER_SIZE + length;
+			records++;
+		}
+
+		// a torn tail is cleared, so what is left of it is never read after the next writes
+		int tornEnd = this.position + RECORD_HEADER_SIZE;
+		if (tornEnd <= this.buffer.capacity() && this.buffer.getInt(this.position) > 0) {
+			tornEnd = (int) Math.min(this.buffer.capacity(), tornEnd + (long) this.buffer.getInt(this.position));
+		}
+		for (int i = this.position; i < Math.min(tornEnd, this.buffer.capacity()); i++) {
+			this.buffer.put(i, (byte) 0);
+		}
+		return records;
+	}
+
+	private void decode(ByteBuffer payload) {
+		byte type = payload.get();
+		payload.getLong();
+		UUID id = new UUID(payload.getLong(), payload.getLong());
+		Reservation current = this.byId.get(id);
+		switch (type) {
+		case RESERVED:
+			Reservation reservation = new Reservation();
+			reservation.setId(id);
+			reservation.setSiteId(getString(payload));
+			reservation.setEmail(getString(payload));
+			reservation.setFullName(getString(payload));
+			getDates(payload, reservation);
+			apply(current, reservation);
+			break;
+		case UPDATED:
+			Reservation updated = copy(current);
+			getDates(payload, updated);
+			apply(current, updated);
+			break;
+		case CANCELLED:
+			apply(current, null);
+			break;
+		default:
+			throw new IllegalStateException("Unknown record type " + type + " in reservation journal " + this.path);
+		}
+	}
+
+	private static ByteBuffer encode(byte type, Reservation reservation) {
+		byte[] siteId = bytes(reservation.getSiteId());
+		byte[] email = bytes(reservation.getEmail());
+		byte[] fullName = bytes(reservation.getFullName());
+		ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 16 + 3 * 2 + length(siteId) + length(email) + length(fullName) + 4 * 4);
+		payload.put(type);
+		payload.putLong(Instant.now().toEpochMilli());
+		payload.putLong(reservation.getId().getMostSignificantBits());
+		payload.putLong(reservation.getId().getLeastSignificantBits());
+		if (type == RESERVED) {
+			putString(payload, siteId);
+			putString(payload, email);
+			putString(payload, fullName);
+		}
+		if (type != CANCELLED) {
+			payload.putInt((int) reservation.getArrivalDate().toEpochDay());
+			payload.putInt((int) reservation.getCheckInDate().toEpochDay());
+			payload.putInt((int) reservation.getCheckOutDate().toEpochDay());
+			payload.putInt((int) reservation.getDepartureDate().toEpochDay());
+		}
+		return payload.flip();
+	}
+
+	private static void getDates(ByteBuffer payload, Reservation reservation) {
+		reservation.setArrivalDate(LocalDate.ofEpochDay(payload.getInt()));
+		reservation.setCheckInDate(LocalDate.ofEpochDay(payload.getInt()));
+		reservation.setCheckOutDate(LocalDate.ofEpochDay(payload.getInt()));
+		reservation.setDepartureDate(LocalDate.ofEpochDay(payload.getInt()));
+	}
+
+	private static byte[] bytes(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int length(byte[] value) {
+		return value == null ? 0 : value.length;
+	}
+
+	private static void putString(ByteBuffer payload, byte[] value) {
+		if (value == null) {
+			payload.putShort((short) -1);
+			return;
+		}
+		payload.putShort((short) value.length);
+		payload.put(value);
+	}
+
+	private static String getString(ByteBuffer payload) {
+		short length = payload.getShort();
+		if (length < 0) {
+			return null;
+		}
+		byte[] value = new byte[length];
+		payload.get(value);
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	private static Reservation probe(LocalDate checkInDate, UUID id) {
+		Reservation probe = new Reservation();
+		probe.setCheckInDate(checkInDate);
+		probe.setId(id);
+		return probe;
+	}
+
+	private static Reservation copy(Reservation reservation) {
+		Reservation copy = new Reservation();
+		copy.setId(reservation.getId());
+		copy.setSiteId(reservation.getSiteId());
+		copy.setEmail(reservation.getEmail());
+		copy.setFullName(reservation.getFullName());
+		copy.setArrivalDate(reservation.getArrivalDate());
+		copy.setCheckInDate(reservation.getCheckInDate());
+		copy.setCheckOutDate(reservation.getCheckOutDate());
+		copy.setDepartureDate(reservation.getDepartureDate());
+		return copy;
+	}
+
+	private synchronized void awaitDurable(int end) {
+		boolean interrupted = false;
+		while (this.sync && this.forced < end && !this.closed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.sync && this.forced < end) {
+			throw new IllegalStateException("Reservation journal " + this.path + " closed before the write was forced to disk");
+		}
+	}
+
+	/*
+	 * Forces whatever was appended since the last force, right away when some writer waits for it
+	 * (sync) or every flush-interval otherwise. Writes go on while a force runs.
+	 */
+	private void flushLoop() {
+		while (true) {
+			MappedByteBuffer target;
+			int end;
+			synchronized (this) {
+				try {
+					if (this.sync) {
+						while (this.running && this.forced == this.position) {
+							wait();
+						}
+					} else {
+						wait(this.flushInterval);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (!this.running) {
+					return;
+				}
+				if (this.forced == this.position) {
+					continue;
+				}
+				target = this.buffer;
+				end = this.position;
+			}
+			this.forceTimer.record(() -> target.force());
+			synchronized (this) {
+				this.forced = end;
+				publishForced();
+				notifyAll();
+			}
+		}
+	}
+
+	@RequiredArgsConstructor
+	private static class Change {
+		private final Reservation before;
+		private final Reservation after;
+		private final int end;
+
+		private UUID id() {
+			return this.after != null ? this.after.getId() : this.before.getId();
+		}
+	}
+}
@@ -1,21 +1,97 @@
 package com.nitzer.campsitereservation.repositories;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.entities.ReservationStatus;
 
 @Repository
 public interface ReservationRepository extends JpaRepository<Reservation, UUID> {
 	
-	@Query("SELECT b from Reservation b WHERE :dateFrom <= b.checkOutDate and :dateTo >= b.checkInDate")
-	public List<Reservation> findByDateInterval(LocalDate dateFrom, LocalDate dateTo);
+	@Query("SELECT b from Reservation b WHERE b.siteId = :siteId and :dateFrom <= b.checkOutDate and :dateTo >= b.checkInDate")
+	public List<Reservation> findByDateInterval(String siteId, LocalDate dateFrom, LocalDate dateTo);
+	
+	@QueryHints(value = { @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+	@Query("SELECT b from Reservation b")
+	public Stream<Reservation> streamAll();
+	
+	/*
+	 * email, when given, is a normalized one, as for findByEmail.
+	 */
+	@Query("SELECT b from Reservation b WHERE b.checkInDate >= :dateFrom and b.checkInDate < :dateTo and (:email is null or b.emailNormalized = :email) ORDER BY b.checkInDate, b.id")
+	public List<Reservation> findPage(LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable);
+	
+	/*
+	 * Next page after (afterCheckIn, afterId). The first condition alone bounds the index range,
+	 * the second one skips the rows of that day already returned.
+	 */
+	@Query("SELECT b from Reservation b WHERE b.checkInDate >= :afterCheckIn and (b.checkInDate > :afterCheckIn or b.id > :afterId) and b.checkInDate < :dateTo and (:email is null or b.emailNormalized = :email) ORDER BY b.checkInDate, b.id")
+	public List<Reservation> findPageAfter(LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable);
+	
+	/*
+	 * Same pages within a site. Ordering by the site as well lets them be read in order from the
+	 * index led by the site.
+	 */
+	@Query("SELECT b from Reservation b WHERE b.siteId = :siteId and b.checkInDate >= :dateFrom and b.checkInDate < :dateTo and (:email is null or b.emailNormalized = :email) ORDER BY b.siteId, b.checkInDate, b.id")
+	public List<Reservation> findSitePage(String siteId, LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable);
+	
+	@Query("SELECT b from Reservation b WHERE b.siteId = :siteId and b.checkInDate >= :afterCheckIn and (b.checkInDate > :afterCheckIn or b.id > :afterId) and b.checkInDate < :dateTo and (:email is null or b.emailNormalized = :email) ORDER BY b.siteId, b.checkInDate, b.id")
+	public List<Reservation> findSitePageAfter(String siteId, LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable);
+	
+	/*
+	 * Reservations of a normalized email in check-in order, read from idx_bookings_email_check_in_id.
+	 */
+	@Query("SELECT b from Reservation b WHERE b.emailNormalized = :email ORDER BY b.checkInDate, b.id")
+	public List<Reservation> findByEmail(String email, Pageable pageable);
+	
+	/*
+	 * Unexpired holds block the dates as well as reservations.
+	 */
+	@Query(value = "SELECT exists(SELECT 1 from bookings b WHERE b.site_id = :siteId and :dateFrom <= b.check_out_date and :dateTo >= b.check_in_date and b.status = 'ACTIVE' and (:id is null or b.id <> :id))"
+			+ " or exists(SELECT 1 from holds h WHERE h.site_id = :siteId and :dateFrom <= h.check_out_date and :dateTo >= h.check_in_date and h.expires_at > current_timestamp and (:id is null or h.id <> :id))",
+			nativeQuery = true)
+	public boolean existsOverlappingReservation(String siteId, LocalDate dateFrom, LocalDate dateTo, UUID id);
+	
+	/*
+	 * A bulk update, so the stored dates are not validated again: a stay that has already
+	 * started can still be cancelled. The persistence context is cleared, so a later findById
+	 * in the same transaction does not return it from the context.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("UPDATE Reservation b SET b.status = :status WHERE b.id = :id")
+	public int updateStatus(UUID id, ReservationStatus status);
+	
+	/*
+	 * Cancelled reservations and active ones checked out before today, native so that the
+	 * cancelled ones are not filtered out.
+	 */
+	@Query(value = "SELECT * from bookings b WHERE b.status = 'CANCELLED' or (b.status = 'ACTIVE' and b.check_out_date < :today) LIMIT :limit",
+			nativeQuery = true)
+	public List<Reservation> findArchivable(LocalDate today, int limit);
+	
+	@Modifying
+	@Query(value = "INSERT into bookings_archive (id, site_id, arrival_date, check_in_date, check_out_date, departure_date, email, full_name, status, archived_at)"
+			+ " SELECT b.id, b.site_id, b.arrival_date, b.check_in_date, b.check_out_date, b.departure_date, b.email, b.full_name,"
+			+ " case when b.status = 'ACTIVE' then 'CHECKED_OUT' else b.status end, current_timestamp from bookings b WHERE b.id in (:ids)",
+			nativeQuery = true)
+	public int copyToArchive(List<UUID> ids);
 	
-	@Query("SELECT count(b) > 0 from Reservation b WHERE :dateFrom <= b.checkOutDate and :dateTo >= b.checkInDate and (:id is null or id != :id)")
-	public boolean existsOverlappingReservation(LocalDate dateFrom, LocalDate dateTo, UUID id);
+	@Modifying
+	@Query(value = "DELETE from bookings b WHERE b.id in (:ids)", nativeQuery = true)
+	public int deleteByIds(List<UUID> ids);
 }
@@ -0,0 +1,123 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+
+/*
+ * Bounded cache of getAvailableDates results keyed by site and requested range, weighed by the
+ * dates they hold: up to max-dates dates over every range and site. The occupancy calendar only changes after a commit and notifies the
+ * changed nights, which evicts every cached range of the site touching them, so a change on a
+ * site never invalidates the ranges of another. A result computed while the site version moved
+ * is never kept. Sites the calendar does not know are all free and are not cached, so any siteId
+ * sent by a client cannot push the ranges of the real sites out.
+ * Concurrent misses for the same range wait on a single computation.
+ */
+@Component
+public class AvailabilityCache {
+
+	private final OccupancyCalendar calendar;
+
+	private final Cache<Key, List<LocalDate>> cache;
+
+	private final ConcurrentMap<Key, Flight> inFlight = new ConcurrentHashMap<>();
+
+	private final Counter coalesced;
+
+	public AvailabilityCache(OccupancyCalendar calendar, MeterRegistry registry,
+			@Value("${reservation.availability-cache.max-dates:100000}") long maxDates) {
+		this.calendar = calendar;
+		this.cache = Caffeine.newBuilder()
+				.maximumWeight(maxDates)
+				.weigher((Key key, List<LocalDate> dates) -> Math.max(1, dates.size()))
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(registry, this.cache, "availability");
+		this.coalesced = Counter.builder("reservation.availability.coalesced")
+				.description("Availability requests answered by an identical computation already in flight")
+				.register(registry);
+		calendar.addListener(this::invalidate);
+	}
+
+	public List<LocalDate> get(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		if (!this.calendar.hasSite(siteId)) {
+			return Collections.unmodifiableList(this.calendar.getFreeNights(siteId, dateFrom, dateTo));
+		}
+
+		Key key = new Key(siteId, dateFrom, dateTo);
+		List<LocalDate> cached = this.cache.getIfPresent(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		long stamp = this.calendar.getVersion(siteId);
+		Flight flight = new Flight(stamp);
+		Flight leader = this.inFlight.putIfAbsent(key, flight);
+		if (leader != null && leader.stamp == stamp) {
+			this.coalesced.increment();
+			return leader.result.join();
+		}
+		if (leader != null) {
+			// the running computation started before the last change, do not wait on an outdated result
+			flight = null;
+		}
+
+		try {
+			List<LocalDate> result = Collections.unmodifiableList(this.calendar.getFreeNights(siteId, dateFrom, dateTo));
+			this.cache.put(key, result);
+			if (this.calendar.getVersion(siteId) != stamp) {
+				// the calendar changed while computing, the invalidation may have run before the put
+				this.cache.asMap().remove(key, result);
+			}
+			if (flight != null) {
+				flight.result.complete(result);
+			}
+			return result;
+		} catch (RuntimeException e) {
+			if (flight != null) {
+				flight.result.completeExceptionally(e);
+			}
+			throw e;
+		} finally {
+			if (flight != null) {
+				this.inFlight.remove(key, flight);
+			}
+		}
+	}
+
+	private void invalidate(String siteId, LocalDate from, LocalDate to) {
+		this.cache.asMap().keySet().removeIf(key -> key.siteId.equals(siteId) && key.dateFrom.isBefore(to) && from.isBefore(key.dateTo));
+	}
+
+	long weightedSize() {
+		this.cache.cleanUp();
+		return this.cache.policy().eviction().get().weightedSize().getAsLong();
+	}
+
+	@RequiredArgsConstructor
+	private static class Flight {
+		private final long stamp;
+		private final CompletableFuture<List<LocalDate>> result = new CompletableFuture<>();
+	}
+
+	@lombok.Value
+	private static class Key {
+		String siteId;
+		LocalDate dateFrom;
+		LocalDate dateTo;
+	}
+}
@@ -0,0 +1,92 @@
+package com.nitzer.campsitereservation.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nitzer.campsitereservation.exceptions.ReservationQueueFullException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/*
+ * Runs the database bound work of the reservation endpoints. In blocking mode (the default) it
+ * runs on the request thread as before. In async mode (reservation.execution-mode=async) it runs
+ * on a fixed pool and the request thread goes back to Tomcat while it waits, so idle connections
+ * do not hold a thread. The pool size bounds the database concurrency, keep it at or under the
+ * connection pool size. When every thread is busy and the queue is full the call fails with 503
+ * instead of queueing without limit.
+ */
+@Component
+public class BlockingCallOffloader {
+
+	private final boolean async;
+
+	private final int queueCapacity;
+
+	private final ThreadPoolExecutor executor;
+
+	public BlockingCallOffloader(MeterRegistry registry,
+			@Value("${reservation.execution-mode:blocking}") String executionMode,
+			@Value("${reservation.async.threads:10}") int threads,
+			@Value("${reservation.async.queue-capacity:1000}") int queueCapacity) {
+		if (!executionMode.equals("blocking") && !executionMode.equals("async")) {
+			throw new IllegalArgumentException("reservation.execution-mode must be blocking or async, not " + executionMode);
+		}
+		this.async = executionMode.equals("async");
+		this.queueCapacity = queueCapacity;
+		if (!this.async) {
+			this.executor = null;
+			return;
+		}
+
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+			Thread thread = new Thread(r, "reservation-async-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.AbortPolicy());
+		new ExecutorServiceMetrics(this.executor, "reservation.async", Tags.empty()).bindTo(registry);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (this.executor != null) {
+			this.executor.shutdown();
+		}
+	}
+
+	public boolean isAsync() {
+		return this.async;
+	}
+
+	/*
+	 * Failures complete the future exceptionally in both modes, so they reach the exception
+	 * handlers the same way.
+	 */
+	public <T> CompletableFuture<T> supply(Supplier<T> call) {
+		if (!this.async) {
+			try {
+				return CompletableFuture.completedFuture(call.get());
+			} catch (RuntimeException e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+
+		try {
+			return CompletableFuture.supplyAsync(call, this.executor);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(new ReservationQueueFullException(this.queueCapacity));
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package com.nitzer.campsitereservation.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.nitzer.campsitereservation.entities.CalendarChange;
+import com.nitzer.campsitereservation.entities.CalendarCheckpoint;
+import com.nitzer.campsitereservation.repositories.CalendarChangeRepository;
+import com.nitzer.campsitereservation.repositories.CalendarCheckpointRepository;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+import com.nitzer.campsitereservation.repositories.ReservationJournal;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Brings the occupancy calendar up to date on startup and keeps a copy of it on local disk.
+ * Every write records the nights it changes in calendar_changes, in its own transaction, and a
+ * snapshot holds the nights of every site as of the last change applied when it was taken. On
+ * startup the snapshot is read and only the nights changed after it are reloaded from the
+ * repository, the whole calendar is loaded when there is no usable snapshot. This runs while the
+ * context is refreshed, so the readiness probe does not accept traffic before the calendar is current.
+ *
+ * Only on with reservation.snapshot.enabled=true, which needs a database that outlives the
+ * process: a snapshot is only used with the database it was taken from, and an in-memory one is
+ * new on every start. Otherwise no change is recorded and the whole calendar is loaded from the
+ * repository. In journal mode the journal replay already rebuilds everything and no snapshot is taken.
+ */
+@Slf4j
+@Component
+public class CalendarSnapshots {
+
+	private static final int MAGIC = 0x43525331;
+
+	private static final int FORMAT_VERSION = 1;
+
+	@Autowired
+	private OccupancyCalendar calendar;
+
+	@Autowired
+	private CalendarChangeRepository changeRepository;
+
+	@Autowired
+	private CalendarCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private ReservationRepository reservationRepository;
+
+	@Autowired
+	private HoldRepository holdRepository;
+
+	@Autowired(required = false)
+	private ReservationJournal journal;
+
+	private final MeterRegistry registry;
+
+	private final boolean enabled;
+
+	private final Path path;
+
+	private final Duration interval;
+
+	private final Timer writes;
+
+	/*
+	 * Highest change seq committed and applied to the calendar.
+	 */
+	private final AtomicLong applied = new AtomicLong();
+
+	/*
+	 * Highest change seq assigned so far, a change inserted later gets a higher one.
+	 */
+	private final AtomicLong assigned = new AtomicLong();
+
+	/*
+	 * Changes from right before their seq is assigned until they are applied or rolled back. A
+	 * snapshot is only taken up to the change before the lowest of them, no lock is shared with
+	 * the write transactions.
+	 */
+	private final Set<Pending> pending = ConcurrentHashMap.newKeySet();
+
+	private ScheduledExecutorService scheduler;
+
+	public CalendarSnapshots(MeterRegistry registry,
+			@Value("${reservation.snapshot.enabled:false}") boolean enabled,
+			@Value("${reservation.snapshot.path:data/calendar.snapshot}") String path,
+			@Value("${reservation.snapshot.interval:PT5M}") Duration interval) {
+		this.registry = registry;
+		this.enabled = enabled;
+		this.path = Paths.get(path).toAbsolutePath();
+		this.interval = interval;
+		this.writes = Timer.builder("reservation.calendar.snapshot")
+				.description("Time to copy the occupancy calendar and write it to disk")
+				.register(registry);
+	}
+
+	@PostConstruct
+	public void start() {
+		long started = System.nanoTime();
+		String source = load();
+		long elapsed = System.nanoTime() - started;
+		TimeGauge.builder("reservation.calendar.warm-up", this, TimeUnit.NANOSECONDS, s -> elapsed)
+				.description("Time to bring the occupancy calendar up to date on startup")
+				.tag("source", source)
+				.register(this.registry);
+		log.info("Occupancy calendar current from the {} in {} ms", source, TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+		if (snapshotting() && !this.interval.isZero() && !this.interval.isNegative()) {
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "calendar-snapshots");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.scheduler.scheduleWithFixedDelay(this::writeQuietly, this.interval.toMillis(), this.interval.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/*
+	 * Writes a last snapshot, so the next start only has to read it.
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (this.scheduler != null) {
+			this.scheduler.shutdown();
+			this.scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		if (snapshotting()) {
+			writeQuietly();
+		}
+	}
+
+	/*
+	 * Time from the start of the JVM until the application takes traffic.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void ready() {
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		TimeGauge.builder("reservation.startup.time-to-ready", this, TimeUnit.MILLISECONDS, s -> uptime)
+				.description("Time from the start of the JVM until the application is ready for traffic")
+				.register(this.registry);
+		log.info("Ready for traffic {} ms after the JVM started", uptime);
+	}
+
+	/*
+	 * Fills the calendar from the snapshot and the changes after it, or from the repository.
+	 * Returns where it was loaded from: snapshot, repository or journal.
+	 */
+	public String load() {
+		if (this.journal != null) {
+			this.calendar.load();
+			return "journal";
+		}
+		if (!this.enabled) {
+			this.calendar.load();
+			return "repository";
+		}
+		CalendarCheckpoint checkpoint = checkpoint();
+		String source = restore(checkpoint) ? "snapshot" : "repository";
+		if (source.equals("repository")) {
+			this.calendar.load();
+		}
+		// changes up to the checkpoint may have been pruned already
+		long last = Math.max(this.changeRepository.findLastSeq(), checkpoint.getWatermark());
+		this.applied.accumulateAndGet(last, Math::max);
+		this.assigned.accumulateAndGet(last, Math::max);
+		return source;
+	}
+
+	/*
+	 * Inserts the change in the current transaction, right before it commits, and runs the calendar
+	 * update once it has committed. Outside of a transaction the update runs right away. With
+	 * snapshots off nothing is inserted, the update still waits for the commit.
+	 */
+	public void record(String siteId, LocalDate dateFrom, LocalDate dateTo, Runnable update) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			update.run();
+			return;
+		}
+		if(!snapshotting()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					update.run();
+				}
+			});
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+			private Pending change;
+
+			private long seq;
+
+			/*
+			 * The insert goes out at once (identity key), inserting it here keeps it from flushing
+			 * the claimed days before the write checks them for conflicts.
+			 */
+			@Override
+			public void beforeCommit(boolean readOnly) {
+				// pending before the seq is assigned, a snapshot never covers a seq whose change is not applied yet
+				this.change = new Pending(CalendarSnapshots.this.assigned.get());
+				CalendarSnapshots.this.pending.add(this.change);
+				this.seq = CalendarSnapshots.this.changeRepository.save(new CalendarChange(siteId, dateFrom, dateTo)).getSeq();
+				CalendarSnapshots.this.assigned.accumulateAndGet(this.seq, Math::max);
+				this.change.bound = this.seq;
+			}
+
+			@Override
+			public void afterCommit() {
+				update.run();
+				CalendarSnapshots.this.applied.accumulateAndGet(this.seq, Math::max);
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				if (this.change != null) {
+					CalendarSnapshots.this.pending.remove(this.change);
+				}
+			}
+		});
+	}
+
+	/*
+	 * Copies the calendar and writes it to a temporary file, which replaces the snapshot once it
+	 * is on disk. The checkpoint is raised to the new snapshot and the changes it covers are deleted.
+	 * The watermark is read before the copy: every change up to it is already in the calendar, the
+	 * ones after it that made it into the copy as well are reloaded on restore anyway.
+	 */
+	public synchronized void write() throws IOException {
+		Timer.Sample sample = Timer.start(this.registry);
+		long watermark = this.applied.get();
+		for (Pending change : this.pending) {
+			watermark = Math.min(watermark, change.bound - 1);
+		}
+		Map<String, BitSet> nights = this.calendar.copyNights();
+
+		CalendarCheckpoint checkpoint = checkpoint();
+		byte[] body = serialize(checkpoint.getStoreId(), watermark, nights);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		Files.createDirectories(this.path.getParent());
+		Path temp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(ByteBuffer.wrap(body));
+			channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) crc.getValue()));
+			channel.force(true);
+		}
+		Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		if (watermark > checkpoint.getWatermark()) {
+			checkpoint.setWatermark(watermark);
+			this.checkpointRepository.save(checkpoint);
+		}
+		int pruned = this.changeRepository.deleteUpTo(watermark);
+		sample.stop(this.writes);
+		log.debug("Calendar snapshot written at change {} over {} sites, {} changes pruned", watermark, nights.size(), pruned);
+	}
+
+	private boolean snapshotting() {
+		return this.enabled && this.journal == null;
+	}
+
+	private void writeQuietly() {
+		try {
+			write();
+		} catch (IOException | RuntimeException e) {
+			log.warn("Calendar snapshot could not be written to {}", this.path, e);
+		}
+	}
+
+	private boolean restore(CalendarCheckpoint checkpoint) {
+		if (!Files.exists(this.path)) {
+			log.info("No calendar snapshot at {}", this.path);
+			return false;
+		}
+		Snapshot snapshot;
+		try {
+			snapshot = read(this.path);
+		} catch (IOException e) {
+			log.warn("Calendar snapshot {} cannot be read: {}", this.path, e.getMessage());
+			return false;
+		}
+		if (!snapshot.storeId.equals(checkpoint.getStoreId()) || snapshot.watermark < checkpoint.getWatermark()) {
+			log.info("Calendar snapshot {} is not from this database or older than the last one taken", this.path);
+			return false;
+		}
+
+		// the same range changed several times is reloaded once, from the rows as they are now
+		List<CalendarChange> changes = this.changeRepository.findAfter(snapshot.watermark).stream()
+				.map(c -> new CalendarChange(c.getSiteId(), c.getDateFrom(), c.getDateTo()))
+				.distinct()
+				.collect(Collectors.toList());
+		this.calendar.restore(snapshot.nights);
+		for (CalendarChange change : changes) {
+			this.calendar.reload(change.getSiteId(), change.getDateFrom(), change.getDateTo(),
+					this.reservationRepository.findByDateInterval(change.getSiteId(), change.getDateFrom(), change.getDateTo()),
+					this.holdRepository.findByDateInterval(change.getSiteId(), change.getDateFrom(), change.getDateTo()));
+		}
+		log.info("Calendar snapshot at change {} restored with {} sites, {} ranges reloaded", snapshot.watermark, snapshot.nights.size(), changes.size());
+		return true;
+	}
+
+	private CalendarCheckpoint checkpoint() {
+		return this.checkpointRepository.findById(CalendarCheckpoint.ID)
+				.orElseThrow(() -> new IllegalStateException("Missing calendar_checkpoint row"));
+	}
+
+	/*
+	 * magic, format version, store id, watermark, site count, then per site its id and the words of its nights.
+	 * The file ends with the CRC32 of all of it.
+	 */
+	private static byte[] serialize(UUID storeId, long watermark, Map<String, BitSet> nights) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeLong(storeId.getMostSignificantBits());
+		out.writeLong(storeId.getLeastSignificantBits());
+		out.writeLong(watermark);
+		out.writeInt(nights.size());
+		for (Map.Entry<String, BitSet> site : nights.entrySet()) {
+			long[] words = site.getValue().toLongArray();
+			out.writeUTF(site.getKey());
+			out.writeInt(words.length);
+			for (long word : words) {
+				out.writeLong(word);
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static Snapshot read(Path path) throws IOException {
+		byte[] bytes = Files.readAllBytes(path);
+		int length = bytes.length - Integer.BYTES;
+		if (length < 0) {
+			throw new IOException("truncated");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(length)) {
+			throw new IOException("checksum mismatch");
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			throw new IOException("not a calendar snapshot of version " + FORMAT_VERSION);
+		}
+		UUID storeId = new UUID(in.readLong(), in.readLong());
+		long watermark = in.readLong();
+		int sites = in.readInt();
+		Map<String, BitSet> nights = new HashMap<>();
+		for (int i = 0; i < sites; i++) {
+			String siteId = in.readUTF();
+			long[] words = new long[in.readInt()];
+			for (int w = 0; w < words.length; w++) {
+				words[w] = in.readLong();
+			}
+			nights.put(siteId, BitSet.valueOf(words));
+		}
+		return new Snapshot(storeId, watermark, nights);
+	}
+
+	/*
+	 * A change whose seq is at least bound, exactly bound once it has been assigned.
+	 */
+	private static class Pending {
+
+		private volatile long bound;
+
+		private Pending(long assigned) {
+			this.bound = assigned + 1;
+		}
+	}
+
+	@AllArgsConstructor
+	private static class Snapshot {
+
+		private final UUID storeId;
+
+		private final long watermark;
+
+		private final Map<String, BitSet> nights;
+	}
+}
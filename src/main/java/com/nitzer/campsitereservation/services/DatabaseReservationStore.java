@@ -0,0 +1,117 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.BookedDateRepository;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+/*
+ * Reservations in the bookings table, claimed days in booked_dates (holds included). Writes go
+ * through ReservationWriteService, which updates the calendar and the email lookups after commit.
+ */
+@Component
+@ConditionalOnExpression("'${reservation.write-mode:direct}' != 'journal'")
+public class DatabaseReservationStore implements ReservationStore {
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Autowired
+	private BookedDateRepository bookedDateRepository;
+
+	@Autowired
+	private ReservationWriteService writeService;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public Optional<Reservation> findById(UUID id) {
+		return this.repository.findById(id);
+	}
+
+	@Override
+	public List<Reservation> findAll() {
+		return this.repository.findAll();
+	}
+
+	/*
+	 * Reads through a forward-only cursor, detaching every reservation afterwards so the
+	 * persistence context does not grow.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void streamAll(Consumer<Reservation> consumer) {
+		try (Stream<Reservation> reservations = this.repository.streamAll()) {
+			reservations.forEach(r -> {
+				consumer.accept(r);
+				this.entityManager.detach(r);
+			});
+		}
+	}
+
+	@Override
+	public List<Reservation> findByEmail(String email, Pageable pageable) {
+		return this.repository.findByEmail(email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findPage(LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable) {
+		return this.repository.findPage(dateFrom, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findPageAfter(LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable) {
+		return this.repository.findPageAfter(afterCheckIn, afterId, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findSitePage(String siteId, LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable) {
+		return this.repository.findSitePage(siteId, dateFrom, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findSitePageAfter(String siteId, LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable) {
+		return this.repository.findSitePageAfter(siteId, afterCheckIn, afterId, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<LocalDate> findClaimedDays(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		return this.bookedDateRepository.findClaimedDays(siteId, dateFrom, dateTo);
+	}
+
+	@Override
+	public Reservation reserve(Reservation reservation) {
+		return this.writeService.reserve(reservation);
+	}
+
+	@Override
+	public List<Reservation> reserveAll(List<Reservation> reservations) {
+		return this.writeService.reserveAll(reservations);
+	}
+
+	@Override
+	public Reservation update(Reservation reservation, UUID id) {
+		return this.writeService.update(reservation, id);
+	}
+
+	@Override
+	public void cancel(UUID id) {
+		this.writeService.cancel(id);
+	}
+}
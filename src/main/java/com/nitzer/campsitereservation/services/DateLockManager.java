@@ -0,0 +1,160 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * In-process locks striped by site and calendar week (Monday based): week w of a site maps to
+ * stripe w mod 64. A write takes the stripes of every week its dates touch, always in ascending
+ * stripe order, so requests for the same dates queue on a fair lock and requests for different
+ * sites never contend. Different weeks of a site can: weeks 64 apart share a stripe, and a stay
+ * of 64 weeks or more takes every stripe of its site.
+ *
+ * The contention counter is tagged with the stripe to keep its series bounded, which makes it
+ * ambiguous across the weeks sharing a stripe. The start of each contended week is tallied in a
+ * small table that keeps the most frequent ones, and the hottest are logged every
+ * HOT_WEEKS_LOG_EVERY contended acquisitions.
+ */
+@Slf4j
+@Component
+public class DateLockManager {
+
+	private static final int STRIPES = 64;
+
+	private static final int HOT_WEEKS = 256;
+
+	private static final int HOT_WEEKS_LOG_EVERY = 100;
+
+	private final ConcurrentMap<String, ReentrantLock[]> locks = new ConcurrentHashMap<>();
+
+	private final Cache<HotWeek, LongAdder> hotWeeks = Caffeine.newBuilder().maximumSize(HOT_WEEKS).build();
+
+	private final LongAdder contended = new LongAdder();
+
+	private final MeterRegistry registry;
+
+	private final Timer waitTimer;
+
+	public DateLockManager(MeterRegistry registry) {
+		this.registry = registry;
+		this.waitTimer = Timer.builder("reservation.lock.wait")
+				.description("Time spent waiting for the date locks of a reservation write")
+				.register(registry);
+	}
+
+	public <T> T withLocks(String siteId, LocalDate dateFrom, LocalDate dateTo, Supplier<T> action) {
+		ReentrantLock[] siteLocks = this.locks.computeIfAbsent(siteId, id -> newStripes());
+		int[] stripes = stripesFor(dateFrom, dateTo);
+		long weekFrom = week(dateFrom);
+		int locked = 0;
+		try {
+			for (int stripe : stripes) {
+				acquire(siteId, siteLocks[stripe], stripe, weekFrom + Math.floorMod(stripe - weekFrom, (long) STRIPES));
+				locked++;
+			}
+			return action.get();
+		} finally {
+			for (int i = locked - 1; i >= 0; i--) {
+				siteLocks[stripes[i]].unlock();
+			}
+		}
+	}
+
+	private void acquire(String siteId, ReentrantLock lock, int stripe, long week) {
+		if (lock.tryLock()) {
+			this.waitTimer.record(0, TimeUnit.NANOSECONDS);
+			return;
+		}
+
+		// tagged with the stripe rather than the week, so the series do not grow with the calendar
+		Counter.builder("reservation.lock.contention")
+				.description("Reservation writes that had to wait for a date lock held by another write")
+				.tag("site", siteId)
+				.tag("stripe", Integer.toString(stripe))
+				.register(this.registry)
+				.increment();
+		hot(siteId, week);
+
+		long start = System.nanoTime();
+		lock.lock();
+		this.waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	private void hot(String siteId, long week) {
+		this.hotWeeks.get(new HotWeek(siteId, LocalDate.ofEpochDay(week * 7 - 3)), k -> new LongAdder()).increment();
+		this.contended.increment();
+		if (this.contended.sum() % HOT_WEEKS_LOG_EVERY == 0) {
+			log.info("Most contended reservation weeks: {}", hottestWeeks(5));
+		}
+	}
+
+	/*
+	 * Site and start of the week of the most contended locks, with how often a write waited on them.
+	 */
+	Map<HotWeek, Long> hottestWeeks(int limit) {
+		Map<HotWeek, Long> hottest = new LinkedHashMap<>();
+		this.hotWeeks.asMap().entrySet().stream()
+				.sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+				.limit(limit)
+				.forEach(e -> hottest.put(e.getKey(), e.getValue().sum()));
+		return hottest;
+	}
+
+	private static ReentrantLock[] newStripes() {
+		ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock(true);
+		}
+		return stripes;
+	}
+
+	private static int[] stripesFor(LocalDate dateFrom, LocalDate dateTo) {
+		long weekFrom = week(dateFrom);
+		long weekTo = Math.max(weekFrom, week(dateTo));
+		return LongStream.rangeClosed(weekFrom, Math.min(weekTo, weekFrom + STRIPES - 1))
+				.mapToInt(w -> (int) Math.floorMod(w, (long) STRIPES))
+				.distinct()
+				.sorted()
+				.toArray();
+	}
+
+	static int stripeOf(LocalDate date) {
+		return (int) Math.floorMod(week(date), (long) STRIPES);
+	}
+
+	/*
+	 * 1970-01-01 was a Thursday, shifting by three days makes every bucket start on a Monday.
+	 */
+	private static long week(LocalDate date) {
+		return Math.floorDiv(date.toEpochDay() + 3, 7);
+	}
+
+	@lombok.Value
+	static class HotWeek {
+		String siteId;
+		LocalDate weekStart;
+
+		@Override
+		public String toString() {
+			return this.siteId + "@" + this.weekStart;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nitzer.campsitereservation.entities.Reservation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/*
+ * Reservations of the most recently looked up emails, up to max-size emails. Every write evicts
+ * the emails it touches once it has committed. A lookup still loading at that point holds the
+ * entry, so the eviction waits for it and drops what it read instead of leaving it cached. The
+ * ttl only bounds how long an entry lives if an eviction were ever missed.
+ */
+@Component
+public class EmailLookupCache {
+
+	private final Cache<String, List<Reservation>> lookups;
+
+	public EmailLookupCache(MeterRegistry registry,
+			@Value("${reservation.email-lookup.max-size:10000}") long maxSize,
+			@Value("${reservation.email-lookup.ttl:PT10M}") Duration ttl) {
+		this.lookups = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttl)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(registry, this.lookups, "email-lookup");
+	}
+
+	public List<Reservation> get(String email, Function<String, List<Reservation>> loader) {
+		return this.lookups.get(email, e -> Collections.unmodifiableList(loader.apply(e)));
+	}
+
+	public void evict(String email) {
+		if (email != null) {
+			this.lookups.invalidate(email);
+		}
+	}
+
+	/*
+	 * Evicts the email once the current transaction commits, right away outside of one.
+	 */
+	public void evictAfterCommit(String email) {
+		afterCommit(() -> evict(email));
+	}
+
+	public void evictAllAfterCommit() {
+		afterCommit(this.lookups::invalidateAll);
+	}
+
+	private void afterCommit(Runnable action) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+}
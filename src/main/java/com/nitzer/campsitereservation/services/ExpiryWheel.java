@@ -0,0 +1,158 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Hashed timing wheel: a ring of buckets, one per tick, and a thread that visits one bucket per
+ * tick. A deadline further away than one turn is stored with the number of turns left, so
+ * scheduling and cancelling are constant time whatever the number of pending deadlines, and
+ * each tick only looks at its own bucket. Deadlines fire up to one tick late.
+ */
+@Slf4j
+class ExpiryWheel {
+
+	private final long tickMillis;
+
+	private final int mask;
+
+	private final List<Deque<Timeout>> buckets;
+
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+
+	private final ConcurrentMap<UUID, Timeout> scheduled = new ConcurrentHashMap<>();
+
+	private final Consumer<UUID> onExpiry;
+
+	private final String name;
+
+	private volatile long startMillis;
+
+	// only used by the wheel thread
+	private long tick;
+
+	private Thread worker;
+
+	/*
+	 * wheelSize is rounded up to a power of two.
+	 */
+	ExpiryWheel(String name, long tickMillis, int wheelSize, Consumer<UUID> onExpiry) {
+		int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+		this.name = name;
+		this.tickMillis = tickMillis;
+		this.mask = size - 1;
+		this.buckets = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			this.buckets.add(new ArrayDeque<>());
+		}
+		this.onExpiry = onExpiry;
+	}
+
+	void start() {
+		this.startMillis = System.currentTimeMillis();
+		this.worker = new Thread(this::run, this.name);
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	void stop() throws InterruptedException {
+		this.worker.interrupt();
+		this.worker.join(TimeUnit.SECONDS.toMillis(5));
+	}
+
+	/*
+	 * Replaces any deadline already scheduled for the id.
+	 */
+	void schedule(UUID id, Instant deadline) {
+		Timeout timeout = new Timeout(id, deadline.toEpochMilli());
+		Timeout previous = this.scheduled.put(id, timeout);
+		if (previous != null) {
+			previous.cancelled = true;
+		}
+		this.added.add(timeout);
+	}
+
+	void cancel(UUID id) {
+		Timeout timeout = this.scheduled.remove(id);
+		if (timeout != null) {
+			timeout.cancelled = true;
+		}
+	}
+
+	int size() {
+		return this.scheduled.size();
+	}
+
+	private void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			long tickEnd = this.startMillis + (this.tick + 1) * this.tickMillis;
+			long wait = tickEnd - System.currentTimeMillis();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			transferAdded();
+			expire(this.buckets.get((int) (this.tick & this.mask)));
+			this.tick++;
+		}
+	}
+
+	private void transferAdded() {
+		for (Timeout timeout = this.added.poll(); timeout != null; timeout = this.added.poll()) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			// last tick ending at or after the deadline, never one already passed
+			long due = Math.max(this.tick, Math.floorDiv(timeout.deadline - this.startMillis + this.tickMillis - 1, this.tickMillis) - 1);
+			timeout.rounds = (due - this.tick) / this.buckets.size();
+			this.buckets.get((int) (due & this.mask)).add(timeout);
+		}
+	}
+
+	private void expire(Deque<Timeout> bucket) {
+		Iterator<Timeout> timeouts = bucket.iterator();
+		while (timeouts.hasNext()) {
+			Timeout timeout = timeouts.next();
+			if (timeout.cancelled) {
+				timeouts.remove();
+			} else if (timeout.rounds > 0) {
+				timeout.rounds--;
+			} else {
+				timeouts.remove();
+				if (this.scheduled.remove(timeout.id, timeout)) {
+					try {
+						this.onExpiry.accept(timeout.id);
+					} catch (RuntimeException e) {
+						log.error("Expiry of {} failed", timeout.id, e);
+					}
+				}
+			}
+		}
+	}
+
+	@RequiredArgsConstructor
+	private static class Timeout {
+		private final UUID id;
+		private final long deadline;
+		private long rounds;
+		private volatile boolean cancelled;
+	}
+}
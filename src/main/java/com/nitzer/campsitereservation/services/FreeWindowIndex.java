@@ -0,0 +1,192 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongUnaryOperator;
+
+import org.springframework.stereotype.Component;
+
+import com.nitzer.campsitereservation.dto.DateRange;
+
+/*
+ * Segment tree over the nights of the occupancy calendar of a site, from epoch-day 0 for DAYS days.
+ * Every node keeps the free run at its start, the free run at its end and its longest free run,
+ * which is enough to find the first run of a given length after a night in logarithmic time.
+ * Nights after the covered days are free. A site known to the calendar gets its tree on its first
+ * search, which then follows the calendar through its change listener, re-reading the changed
+ * nights from it. Any other site is all free and is searched without a tree, so a siteId sent by
+ * a client never allocates one.
+ */
+@Component
+public class FreeWindowIndex {
+
+	static final int DAYS = 1 << 16;
+
+	private final OccupancyCalendar calendar;
+
+	private final ConcurrentMap<String, Tree> trees = new ConcurrentHashMap<>();
+
+	public FreeWindowIndex(OccupancyCalendar calendar) {
+		this.calendar = calendar;
+		calendar.addListener(this::refresh);
+	}
+
+	/*
+	 * Up to limit windows of the given number of nights, the first one starting on or after
+	 * dateFrom and each one after the previous. A window [checkIn, checkOut) is only returned
+	 * when it can be reserved: the check-in and check-out days are claimed as well, so the
+	 * nights before and after it have to be free too.
+	 */
+	public List<DateRange> findWindows(String siteId, LocalDate dateFrom, int nights, int limit) {
+		long from = Math.max(0, dateFrom.toEpochDay() - 1);
+		if (!this.calendar.hasSite(siteId)) {
+			return collect(from, nights, limit, night -> night);
+		}
+
+		Tree tree = this.trees.computeIfAbsent(siteId, id -> new Tree());
+		tree.build(siteId);
+
+		tree.lock.readLock().lock();
+		try {
+			return collect(from, nights, limit, night -> tree.firstRun(night, nights + 2));
+		} finally {
+			tree.lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * firstRun gives the first night at or after the one given starting a run of nights + 2 free nights.
+	 */
+	private static List<DateRange> collect(long from, int nights, int limit, LongUnaryOperator firstRun) {
+		List<DateRange> windows = new ArrayList<>(limit);
+		while (windows.size() < limit) {
+			long run = firstRun.applyAsLong(from);
+			LocalDate checkIn = LocalDate.ofEpochDay(run + 1);
+			windows.add(new DateRange(checkIn, checkIn.plusDays(nights)));
+			from = run + nights;
+		}
+		return windows;
+	}
+
+	int treeCount() {
+		return this.trees.size();
+	}
+
+	private void refresh(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		Tree tree = this.trees.get(siteId);
+		if (tree != null) {
+			tree.refresh(siteId, dateFrom, dateTo);
+		}
+	}
+
+	private class Tree {
+
+		private final int[] prefix = new int[2 * DAYS];
+
+		private final int[] suffix = new int[2 * DAYS];
+
+		private final int[] longest = new int[2 * DAYS];
+
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		private volatile boolean built;
+
+		/*
+		 * Reads every night of the site the first time. The tree is already visible to the
+		 * listener by then, so a change committed meanwhile is applied after it, never lost.
+		 */
+		private void build(String siteId) {
+			if (this.built) {
+				return;
+			}
+			this.lock.writeLock().lock();
+			try {
+				if (!this.built) {
+					refresh(siteId, LocalDate.MIN, LocalDate.MAX);
+					this.built = true;
+				}
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+
+		/*
+		 * First night at or after from that starts a run of at least length free nights.
+		 */
+		private long firstRun(long from, int length) {
+			if (from >= DAYS) {
+				return from;
+			}
+			int[] run = new int[1];
+			int found = find(1, 0, DAYS, (int) from, length, run);
+			return found >= 0 ? found : DAYS - run[0];
+		}
+
+		/*
+		 * Visits the nodes covering [from, DAYS) left to right. run holds the length of the free run
+		 * ending right before the current node, counted from the first night at or after from.
+		 */
+		private int find(int node, int lo, int hi, int from, int length, int[] run) {
+			if (hi <= from) {
+				return -1;
+			}
+			if (lo >= from) {
+				if (run[0] + this.prefix[node] >= length) {
+					return lo - run[0];
+				}
+				if (this.longest[node] < length) {
+					run[0] = this.prefix[node] == hi - lo ? run[0] + hi - lo : this.suffix[node];
+					return -1;
+				}
+			}
+			int mid = (lo + hi) >>> 1;
+			int found = find(2 * node, lo, mid, from, length, run);
+			return found >= 0 ? found : find(2 * node + 1, mid, hi, from, length, run);
+		}
+
+		private void refresh(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+			int from = (int) Math.max(0, Math.min(DAYS, dateFrom.toEpochDay()));
+			int to = (int) Math.max(0, Math.min(DAYS, dateTo.toEpochDay()));
+			if (from >= to) {
+				return;
+			}
+
+			this.lock.writeLock().lock();
+			try {
+				// read under the write lock, so a later change is never overwritten by an earlier one
+				BitSet free = calendar.getFreeBitmap(siteId, LocalDate.ofEpochDay(from), LocalDate.ofEpochDay(to));
+				for (int d = from; d < to; d++) {
+					int leaf = DAYS + d;
+					int value = free.get(d - from) ? 1 : 0;
+					this.prefix[leaf] = value;
+					this.suffix[leaf] = value;
+					this.longest[leaf] = value;
+				}
+				int length = 1;
+				for (int lo = (DAYS + from) >> 1, hi = (DAYS + to - 1) >> 1; lo >= 1; lo >>= 1, hi >>= 1) {
+					length <<= 1;
+					for (int node = lo; node <= hi; node++) {
+						combine(node, length);
+					}
+				}
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+
+		private void combine(int node, int length) {
+			int half = length >> 1;
+			int left = 2 * node;
+			int right = left + 1;
+			this.prefix[node] = this.prefix[left] == half ? half + this.prefix[right] : this.prefix[left];
+			this.suffix[node] = this.suffix[right] == half ? half + this.suffix[left] : this.suffix[right];
+			this.longest[node] = Math.max(Math.max(this.longest[left], this.longest[right]), this.suffix[left] + this.prefix[right]);
+		}
+	}
+}
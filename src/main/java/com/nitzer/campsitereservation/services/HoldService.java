@@ -0,0 +1,142 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+import com.nitzer.campsitereservation.entities.Hold;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.HoldNotFoundException;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Holds keep dates aside for a limited time, they are confirmed into a reservation or released.
+ * Every hold has its expiry scheduled in a timing wheel, which releases it if it is still there.
+ * Pending holds are read back from the repository on startup, so none outlives its expiry after
+ * a restart. Writes take the same date locks and retries as the reservation writes.
+ * Not available in journal mode, like HoldController.
+ */
+@Slf4j
+@Service
+@ConditionalOnExpression("'${reservation.write-mode:direct}' != 'journal'")
+public class HoldService {
+
+	@Autowired
+	private HoldRepository repository;
+
+	@Autowired
+	private ReservationWriteService writeService;
+
+	@Autowired
+	private DateLockManager lockManager;
+
+	@Autowired
+	private TransientFailureRetrier retrier;
+
+	private final Duration ttl;
+
+	private final ExpiryWheel wheel;
+
+	private final Counter expired;
+
+	public HoldService(MeterRegistry registry,
+			@Value("${reservation.hold.ttl:PT10M}") Duration ttl,
+			@Value("${reservation.hold.tick:PT1S}") Duration tick,
+			@Value("${reservation.hold.wheel-size:512}") int wheelSize) {
+		this.ttl = ttl;
+		this.wheel = new ExpiryWheel("hold-expiry", tick.toMillis(), wheelSize, this::expire);
+
+		Gauge.builder("reservation.holds.pending", this.wheel, ExpiryWheel::size)
+				.description("Holds waiting to be confirmed, released or expired")
+				.register(registry);
+		this.expired = Counter.builder("reservation.holds.expired")
+				.description("Holds released because they expired")
+				.register(registry);
+	}
+
+	@PostConstruct
+	public void start() {
+		this.wheel.start();
+		recover();
+	}
+
+	/*
+	 * Schedules the expiry of every hold in the repository, replacing the ones already scheduled.
+	 */
+	public void recover() {
+		List<Hold> holds = this.repository.findAll();
+		holds.forEach(h -> this.wheel.schedule(h.getId(), h.getExpiresAt()));
+		log.info("Scheduled expiry of {} pending holds", holds.size());
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		this.wheel.stop();
+	}
+
+	public Hold hold(Reservation reservation) throws RuntimeException {
+		Hold hold = this.retrier.execute("hold", () -> this.lockManager.withLocks(reservation.getSiteId(), reservation.getCheckInDate(), reservation.getCheckOutDate(),
+				() -> this.writeService.hold(new Hold(reservation, Instant.now().plus(this.ttl)))));
+		this.wheel.schedule(hold.getId(), hold.getExpiresAt());
+		return hold;
+	}
+
+	public Hold getOne(UUID id) {
+		return this.repository.findById(id)
+				.filter(h -> h.getExpiresAt().isAfter(Instant.now()))
+				.orElseThrow(() -> new HoldNotFoundException(id));
+	}
+
+	public Reservation confirm(UUID id) throws RuntimeException {
+		Hold hold = getOne(id);
+		Reservation reservation = this.retrier.execute("confirm", () -> this.lockManager.withLocks(hold.getSiteId(), hold.getCheckInDate(), hold.getCheckOutDate(),
+				() -> this.writeService.confirmHold(id, Instant.now())));
+		this.wheel.cancel(id);
+		return reservation;
+	}
+
+	public void release(UUID id) throws RuntimeException {
+		Hold hold = this.repository.findById(id).orElseThrow(() -> new HoldNotFoundException(id));
+		boolean released = this.retrier.execute("release", () -> this.lockManager.withLocks(hold.getSiteId(), hold.getCheckInDate(), hold.getCheckOutDate(),
+				() -> this.writeService.releaseHold(id, null)));
+		if(!released) {
+			throw new HoldNotFoundException(id);
+		}
+		this.wheel.cancel(id);
+	}
+
+	/*
+	 * Runs on the wheel thread. A release that fails is tried again on the next tick.
+	 */
+	private void expire(UUID id) {
+		try {
+			this.repository.findById(id).ifPresent(hold -> {
+				boolean released = this.lockManager.withLocks(hold.getSiteId(), hold.getCheckInDate(), hold.getCheckOutDate(),
+						() -> this.writeService.releaseHold(id, Instant.now()));
+				if(released) {
+					this.expired.increment();
+				} else {
+					// not expired yet by the clock, e.g. after it was adjusted
+					this.wheel.schedule(id, hold.getExpiresAt());
+				}
+			});
+		} catch (RuntimeException e) {
+			log.warn("Could not release expired hold {}, will try again: {}", id, e.getMessage());
+			this.wheel.schedule(id, Instant.now());
+		}
+	}
+}
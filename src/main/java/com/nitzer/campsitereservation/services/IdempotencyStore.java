@@ -0,0 +1,92 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nitzer.campsitereservation.exceptions.IdempotencyKeyReusedException;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+
+/*
+ * Outcome of requests sent with an Idempotency-Key, kept for a bounded time and number of keys.
+ * The first request with a key runs the operation, later ones with the same key get its outcome,
+ * waiting for it when it is still running. Only final outcomes are kept: a result or a conflict.
+ * Any other failure forgets the key so the client can retry it.
+ */
+@Component
+public class IdempotencyStore {
+
+	private final Cache<String, Outcome> outcomes;
+
+	private final Counter replayed;
+
+	public IdempotencyStore(MeterRegistry registry,
+			@Value("${reservation.idempotency.max-size:10000}") long maxSize,
+			@Value("${reservation.idempotency.ttl:PT24H}") Duration ttl) {
+		this.outcomes = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttl)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(registry, this.outcomes, "idempotency");
+		this.replayed = Counter.builder("reservation.idempotency.replayed")
+				.description("Requests answered with the outcome of an earlier request with the same idempotency key")
+				.register(registry);
+	}
+
+	/*
+	 * The fingerprint identifies the request, a key sent again with a different one is rejected.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Object fingerprint, Supplier<T> operation) {
+		Outcome outcome = new Outcome(fingerprint);
+		Outcome original = this.outcomes.asMap().putIfAbsent(key, outcome);
+		if (original != null) {
+			if (!original.fingerprint.equals(fingerprint)) {
+				throw new IdempotencyKeyReusedException(key);
+			}
+			this.replayed.increment();
+			return (T) await(original.result);
+		}
+
+		try {
+			T result = operation.get();
+			outcome.result.complete(result);
+			return result;
+		} catch (RuntimeException e) {
+			if (!(e instanceof OverlappingDatesException)) {
+				this.outcomes.asMap().remove(key, outcome);
+			}
+			outcome.result.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private static Object await(CompletableFuture<Object> result) {
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	@RequiredArgsConstructor
+	private static class Outcome {
+		private final Object fingerprint;
+		private final CompletableFuture<Object> result = new CompletableFuture<>();
+	}
+}
@@ -0,0 +1,122 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.ReservationJournal;
+
+/*
+ * Reservations in the journal (reservation.write-mode=journal). Nothing goes through JPA, the
+ * calendar and the email lookups follow the changes the journal publishes instead of the write
+ * transactions.
+ */
+@Component
+@ConditionalOnProperty(name = "reservation.write-mode", havingValue = "journal")
+public class JournalReservationStore implements ReservationStore {
+
+	@Autowired
+	private ReservationJournal journal;
+
+	@Autowired
+	private OccupancyCalendar calendar;
+
+	@Autowired
+	private EmailLookupCache emailLookups;
+
+	@PostConstruct
+	public void start() {
+		this.journal.addListener(this::changed);
+	}
+
+	@Override
+	public Optional<Reservation> findById(UUID id) {
+		return this.journal.findById(id);
+	}
+
+	@Override
+	public List<Reservation> findAll() {
+		return this.journal.findAll();
+	}
+
+	@Override
+	public void streamAll(Consumer<Reservation> consumer) {
+		this.journal.streamAll().forEach(consumer);
+	}
+
+	@Override
+	public List<Reservation> findByEmail(String email, Pageable pageable) {
+		return this.journal.findByEmail(email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findPage(LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable) {
+		return this.journal.findPage(dateFrom, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findPageAfter(LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable) {
+		return this.journal.findPageAfter(afterCheckIn, afterId, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findSitePage(String siteId, LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable) {
+		return this.journal.findSitePage(siteId, dateFrom, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<Reservation> findSitePageAfter(String siteId, LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable) {
+		return this.journal.findSitePageAfter(siteId, afterCheckIn, afterId, dateTo, email, pageable);
+	}
+
+	@Override
+	public List<LocalDate> findClaimedDays(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		return this.journal.findClaimedDays(siteId, dateFrom, dateTo);
+	}
+
+	@Override
+	public Reservation reserve(Reservation reservation) {
+		return this.journal.reserve(reservation);
+	}
+
+	@Override
+	public List<Reservation> reserveAll(List<Reservation> reservations) {
+		return this.journal.reserveAll(reservations);
+	}
+
+	@Override
+	public Reservation update(Reservation reservation, UUID id) {
+		return this.journal.update(reservation, id);
+	}
+
+	@Override
+	public void cancel(UUID id) {
+		this.journal.cancel(id);
+	}
+
+	private void changed(Reservation before, Reservation after) {
+		if (before != null) {
+			this.emailLookups.evict(before.getEmailNormalized());
+		}
+		if (after != null) {
+			this.emailLookups.evict(after.getEmailNormalized());
+		}
+		if (before == null) {
+			this.calendar.book(after.getSiteId(), after.getCheckInDate(), after.getCheckOutDate());
+		} else if (after == null) {
+			this.calendar.release(before.getSiteId(), before.getCheckInDate(), before.getCheckOutDate());
+		} else {
+			this.calendar.move(after.getSiteId(), before.getCheckInDate(), before.getCheckOutDate(), after.getCheckInDate(), after.getCheckOutDate());
+		}
+	}
+}
@@ -0,0 +1,339 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.nitzer.campsitereservation.dto.DateRange;
+import com.nitzer.campsitereservation.entities.Hold;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+import com.nitzer.campsitereservation.repositories.ReservationJournal;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * In-memory index of occupied nights, one bit per epoch-day and site.
+ * A night d of a site is occupied when some reservation or hold of the site has checkInDate <= d < checkOutDate.
+ * It is loaded on startup by CalendarSnapshots and only modified after a write has been committed.
+ * Every site has its own nights, lock and version, so writes on one site never block or
+ * invalidate reads of another.
+ */
+@Slf4j
+@Component
+public class OccupancyCalendar {
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Autowired
+	private HoldRepository holdRepository;
+
+	@Autowired(required = false)
+	private ReservationJournal journal;
+
+	private final ConcurrentMap<String, Site> sites = new ConcurrentHashMap<>();
+
+	private final AtomicLong version = new AtomicLong();
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+	/*
+	 * Called with the site and the [from, to) range of nights that changed, after the calendar
+	 * has been updated.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		void changed(String siteId, LocalDate from, LocalDate to);
+	}
+
+	public void load() {
+		List<Reservation> reservations = this.journal != null ? this.journal.findAll() : this.repository.findAll();
+		List<Hold> holds = this.holdRepository.findAll();
+
+		Set<String> loaded = new HashSet<>(this.sites.keySet());
+		this.sites.values().forEach(Site::clear);
+		reservations.forEach(r -> site(r.getSiteId()).set(r.getCheckInDate(), r.getCheckOutDate(), true));
+		holds.forEach(h -> site(h.getSiteId()).set(h.getCheckInDate(), h.getCheckOutDate(), true));
+		loaded.addAll(this.sites.keySet());
+
+		log.info("Occupancy calendar loaded with {} reservations and {} holds over {} sites", reservations.size(), holds.size(), this.sites.size());
+		loaded.forEach(siteId -> notifyChange(siteId, LocalDate.MIN, LocalDate.MAX));
+	}
+
+	/*
+	 * Copy of the occupied nights of every site.
+	 */
+	public Map<String, BitSet> copyNights() {
+		Map<String, BitSet> copy = new HashMap<>();
+		this.sites.forEach((siteId, site) -> {
+			site.lock.readLock().lock();
+			try {
+				copy.put(siteId, (BitSet) site.nights.clone());
+			} finally {
+				site.lock.readLock().unlock();
+			}
+		});
+		return copy;
+	}
+
+	/*
+	 * Replaces every site with the nights given, as load does with the repository.
+	 */
+	public void restore(Map<String, BitSet> nights) {
+		Set<String> loaded = new HashSet<>(this.sites.keySet());
+		this.sites.values().forEach(Site::clear);
+		nights.forEach((siteId, occupied) -> {
+			Site site = site(siteId);
+			site.lock.writeLock().lock();
+			try {
+				site.nights.or(occupied);
+			} finally {
+				site.lock.writeLock().unlock();
+			}
+		});
+		loaded.addAll(this.sites.keySet());
+		loaded.forEach(siteId -> notifyChange(siteId, LocalDate.MIN, LocalDate.MAX));
+	}
+
+	/*
+	 * Recomputes the nights in [dateFrom, dateTo) of the site from the reservations and holds given,
+	 * which have to include every one of the site overlapping that range.
+	 */
+	public void reload(String siteId, LocalDate dateFrom, LocalDate dateTo, Collection<Reservation> reservations, Collection<Hold> holds) {
+		Site site = site(siteId);
+		site.lock.writeLock().lock();
+		try {
+			site.set(dateFrom, dateTo, false);
+			reservations.forEach(r -> site.set(max(r.getCheckInDate(), dateFrom), min(r.getCheckOutDate(), dateTo), true));
+			holds.forEach(h -> site.set(max(h.getCheckInDate(), dateFrom), min(h.getCheckOutDate(), dateTo), true));
+		} finally {
+			site.lock.writeLock().unlock();
+		}
+		notifyChange(siteId, dateFrom, dateTo);
+	}
+
+	/*
+	 * Sites with some reservation or hold since the calendar was loaded.
+	 */
+	public Set<String> getSites() {
+		return Set.copyOf(this.sites.keySet());
+	}
+
+	/*
+	 * Whether the site has had some reservation or hold since the calendar was loaded. Every night
+	 * of any other site is free.
+	 */
+	public boolean hasSite(String siteId) {
+		return this.sites.containsKey(siteId);
+	}
+
+	/*
+	 * Incremented on every change of any site, after the nights have been updated and before listeners run.
+	 */
+	public long getVersion() {
+		return this.version.get();
+	}
+
+	/*
+	 * Incremented on every change of the site, after the nights have been updated and before listeners run.
+	 */
+	public long getVersion(String siteId) {
+		Site site = this.sites.get(siteId);
+		return site == null ? 0 : site.version.get();
+	}
+
+	/*
+	 * Versions qualified with the time this instance was created, so they do not repeat across restarts.
+	 */
+	public String getVersionTag() {
+		return this.epoch + "." + getVersion();
+	}
+
+	public String getVersionTag(String siteId) {
+		return this.epoch + "." + getVersion(siteId);
+	}
+
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	public List<LocalDate> getFreeNights(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		long from = dateFrom.toEpochDay();
+		long to = dateTo.toEpochDay();
+		List<LocalDate> result = new ArrayList<>((int) Math.max(0, to - from));
+		Site site = this.sites.getOrDefault(siteId, Site.EMPTY);
+
+		site.lock.readLock().lock();
+		try {
+			for (long d = from; d < to; d++) {
+				if (d < 0 || !site.nights.get((int) d)) {
+					result.add(LocalDate.ofEpochDay(d));
+				}
+			}
+		} finally {
+			site.lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/*
+	 * Free nights as [start, end) ranges, found by jumping between occupied runs of the bitset,
+	 * so the cost depends on the number of reservations in the window rather than on its length.
+	 */
+	public List<DateRange> getFreeRanges(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		long to = dateTo.toEpochDay();
+		List<DateRange> result = new ArrayList<>();
+		Site site = this.sites.getOrDefault(siteId, Site.EMPTY);
+
+		site.lock.readLock().lock();
+		try {
+			long cursor = dateFrom.toEpochDay();
+			while (cursor < to) {
+				long freeStart = cursor < 0 ? cursor : site.nights.nextClearBit((int) cursor);
+				if (freeStart >= to) {
+					break;
+				}
+				long nextOccupied = site.nights.nextSetBit((int) Math.max(0, freeStart));
+				long freeEnd = nextOccupied < 0 ? to : Math.min(to, nextOccupied);
+				result.add(new DateRange(LocalDate.ofEpochDay(freeStart), LocalDate.ofEpochDay(freeEnd)));
+				cursor = freeEnd;
+			}
+		} finally {
+			site.lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/*
+	 * Bit i is set when the night dateFrom + i is free.
+	 */
+	public BitSet getFreeBitmap(String siteId, LocalDate dateFrom, LocalDate dateTo) {
+		long from = dateFrom.toEpochDay();
+		int length = (int) Math.max(0, dateTo.toEpochDay() - from);
+		BitSet free = new BitSet(length);
+		free.set(0, length);
+		Site site = this.sites.getOrDefault(siteId, Site.EMPTY);
+
+		site.lock.readLock().lock();
+		try {
+			for (int d = site.nights.nextSetBit((int) Math.max(0, from)); d >= 0 && d - from < length; d = site.nights.nextSetBit(d + 1)) {
+				free.clear((int) (d - from));
+			}
+		} finally {
+			site.lock.readLock().unlock();
+		}
+		return free;
+	}
+
+	public boolean isOccupied(String siteId, LocalDate night) {
+		long d = night.toEpochDay();
+		Site site = this.sites.getOrDefault(siteId, Site.EMPTY);
+
+		site.lock.readLock().lock();
+		try {
+			return d >= 0 && site.nights.get((int) d);
+		} finally {
+			site.lock.readLock().unlock();
+		}
+	}
+
+	public void book(String siteId, LocalDate checkInDate, LocalDate checkOutDate) {
+		site(siteId).set(checkInDate, checkOutDate, true);
+		notifyChange(siteId, checkInDate, checkOutDate);
+	}
+
+	public void release(String siteId, LocalDate checkInDate, LocalDate checkOutDate) {
+		site(siteId).set(checkInDate, checkOutDate, false);
+		notifyChange(siteId, checkInDate, checkOutDate);
+	}
+
+	public void move(String siteId, LocalDate oldCheckInDate, LocalDate oldCheckOutDate, LocalDate newCheckInDate, LocalDate newCheckOutDate) {
+		Site site = site(siteId);
+		site.lock.writeLock().lock();
+		try {
+			site.set(oldCheckInDate, oldCheckOutDate, false);
+			site.set(newCheckInDate, newCheckOutDate, true);
+		} finally {
+			site.lock.writeLock().unlock();
+		}
+		notifyChange(siteId, oldCheckInDate, oldCheckOutDate);
+		notifyChange(siteId, newCheckInDate, newCheckOutDate);
+	}
+
+	private static LocalDate max(LocalDate a, LocalDate b) {
+		return a.isAfter(b) ? a : b;
+	}
+
+	private static LocalDate min(LocalDate a, LocalDate b) {
+		return a.isBefore(b) ? a : b;
+	}
+
+	private Site site(String siteId) {
+		return this.sites.computeIfAbsent(siteId, id -> new Site());
+	}
+
+	private void notifyChange(String siteId, LocalDate from, LocalDate to) {
+		site(siteId).version.incrementAndGet();
+		this.version.incrementAndGet();
+		this.listeners.forEach(l -> l.changed(siteId, from, to));
+	}
+
+	private static class Site {
+
+		/*
+		 * Read in place of the sites without any reservation yet, never written.
+		 */
+		private static final Site EMPTY = new Site();
+
+		private final BitSet nights = new BitSet();
+
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		private final AtomicLong version = new AtomicLong();
+
+		private void clear() {
+			this.lock.writeLock().lock();
+			try {
+				this.nights.clear();
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+
+		/*
+		 * The write lock is reentrant, so move can update both ranges under a single lock.
+		 */
+		private void set(LocalDate checkInDate, LocalDate checkOutDate, boolean occupied) {
+			int from = (int) Math.max(0, checkInDate.toEpochDay());
+			int to = (int) Math.max(0, checkOutDate.toEpochDay());
+			if (from >= to) {
+				return;
+			}
+			this.lock.writeLock().lock();
+			try {
+				this.nights.set(from, to, occupied);
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+	}
+}
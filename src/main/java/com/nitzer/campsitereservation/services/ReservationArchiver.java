@@ -0,0 +1,102 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Moves cancelled and checked-out reservations from bookings to bookings_archive every
+ * reservation.archive.interval, in transactions of reservation.archive.batch-size reservations,
+ * so bookings only grows with the stays still to come. Not used when the reservations are kept
+ * in the journal.
+ */
+@Slf4j
+@Service
+@ConditionalOnExpression("'${reservation.write-mode:direct}' != 'journal'")
+public class ReservationArchiver {
+
+	@Autowired
+	private ReservationWriteService writeService;
+
+	@Autowired
+	private TransientFailureRetrier retrier;
+
+	private final Duration interval;
+
+	private final int batchSize;
+
+	private final Counter archived;
+
+	private ScheduledExecutorService scheduler;
+
+	public ReservationArchiver(MeterRegistry registry,
+			@Value("${reservation.archive.interval:PT1H}") Duration interval,
+			@Value("${reservation.archive.batch-size:500}") int batchSize) {
+		this.interval = interval;
+		this.batchSize = batchSize;
+		this.archived = Counter.builder("reservation.archived")
+				.description("Cancelled and checked-out reservations moved to the archive")
+				.register(registry);
+	}
+
+	@PostConstruct
+	public void start() {
+		if (this.interval.isZero() || this.interval.isNegative()) {
+			return;
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "reservation-archiver");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scheduler.scheduleWithFixedDelay(this::archiveQuietly, this.interval.toMillis(), this.interval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	/*
+	 * Archives batch after batch until there is nothing left checked out before today or cancelled.
+	 * Returns the number of reservations moved.
+	 */
+	public int archive(LocalDate today) throws RuntimeException {
+		int total = 0;
+		int moved;
+		do {
+			moved = this.retrier.execute("archive", () -> this.writeService.archive(today, this.batchSize));
+			this.archived.increment(moved);
+			total += moved;
+		} while (moved == this.batchSize && !Thread.currentThread().isInterrupted());
+		return total;
+	}
+
+	private void archiveQuietly() {
+		try {
+			int moved = archive(LocalDate.now());
+			if (moved > 0) {
+				log.info("Archived {} cancelled or checked-out reservations", moved);
+			}
+		} catch (RuntimeException e) {
+			log.warn("Reservation archiving failed, it is retried in {}", this.interval, e);
+		}
+	}
+}
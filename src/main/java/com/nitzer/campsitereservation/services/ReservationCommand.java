@@ -0,0 +1,42 @@
+package com.nitzer.campsitereservation.services;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * A reservation write waiting to be applied, together with the future its caller waits on.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ReservationCommand {
+
+	public enum Type {
+		RESERVE, UPDATE, CANCEL
+	}
+
+	private final Type type;
+
+	private final Reservation reservation;
+
+	private final UUID id;
+
+	private final CompletableFuture<Reservation> result = new CompletableFuture<>();
+
+	public static ReservationCommand reserve(Reservation reservation) {
+		return new ReservationCommand(Type.RESERVE, reservation, reservation.getId());
+	}
+
+	public static ReservationCommand update(Reservation reservation, UUID id) {
+		return new ReservationCommand(Type.UPDATE, reservation, id);
+	}
+
+	public static ReservationCommand cancel(UUID id) {
+		return new ReservationCommand(Type.CANCEL, null, id);
+	}
+}
@@ -0,0 +1,45 @@
+package com.nitzer.campsitereservation.services;
+
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+
+/*
+ * Times the phases of the reservation writes: the whole call, the write transaction (persist)
+ * and the flush of the claimed days where overlaps are detected (conflict-check).
+ */
+@AllArgsConstructor
+@Component
+public class ReservationMetrics {
+
+	public static final String TOTAL = "total";
+
+	public static final String PERSIST = "persist";
+
+	public static final String CONFLICT_CHECK = "conflict-check";
+
+	private final MeterRegistry registry;
+
+	public <T> T time(String method, String phase, Supplier<T> action) {
+		Timer.Sample sample = Timer.start(this.registry);
+		String exception = "none";
+		try {
+			return action.get();
+		} catch (RuntimeException e) {
+			exception = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			sample.stop(Timer.builder("reservation.service")
+					.description("Reservation writes by method and phase")
+					.tag("method", method)
+					.tag("phase", phase)
+					.tag("exception", exception)
+					.publishPercentileHistogram()
+					.register(this.registry));
+		}
+	}
+}
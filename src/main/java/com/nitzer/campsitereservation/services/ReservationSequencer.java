@@ -0,0 +1,299 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+import com.nitzer.campsitereservation.exceptions.ReservationQueueFullException;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Single-writer mode (reservation.write-mode=sequencer). Writes are queued and a single thread
+ * drains them in batches: conflicts are decided against the occupancy calendar plus the commands
+ * already accepted in the batch, and the accepted commands are committed in one transaction.
+ * Transient database failures are retried like the direct writes; if the transaction still
+ * fails, the batch is replayed one command at a time so each caller still gets its own outcome.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "reservation.write-mode", havingValue = "sequencer")
+public class ReservationSequencer {
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Autowired
+	private ReservationWriteService writeService;
+
+	@Autowired
+	private OccupancyCalendar calendar;
+
+	@Autowired
+	private TransientFailureRetrier retrier;
+
+	private final BlockingQueue<ReservationCommand> queue;
+
+	private final int capacity;
+
+	private final int maxBatchSize;
+
+	private final long offerTimeout;
+
+	private final DistributionSummary batchSizes;
+
+	private final Counter fallbacks;
+
+	private Thread writer;
+
+	public ReservationSequencer(MeterRegistry registry,
+			@Value("${reservation.sequencer.queue-capacity:1024}") int capacity,
+			@Value("${reservation.sequencer.max-batch-size:64}") int maxBatchSize,
+			@Value("${reservation.sequencer.offer-timeout:100}") long offerTimeout) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.capacity = capacity;
+		this.maxBatchSize = maxBatchSize;
+		this.offerTimeout = offerTimeout;
+
+		Gauge.builder("reservation.sequencer.queue.depth", this.queue, BlockingQueue::size)
+				.description("Reservation writes waiting for the sequencer")
+				.register(registry);
+		this.batchSizes = DistributionSummary.builder("reservation.sequencer.batch.size")
+				.description("Commands committed per sequencer transaction")
+				.publishPercentileHistogram()
+				.register(registry);
+		this.fallbacks = Counter.builder("reservation.sequencer.batch.fallback")
+				.description("Batches that failed and were replayed one command at a time")
+				.register(registry);
+	}
+
+	@PostConstruct
+	public void start() {
+		this.writer = new Thread(this::run, "reservation-sequencer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		this.writer.interrupt();
+		this.writer.join(TimeUnit.SECONDS.toMillis(5));
+	}
+
+	public CompletableFuture<Reservation> submit(ReservationCommand command) {
+		try {
+			if (!this.queue.offer(command, this.offerTimeout, TimeUnit.MILLISECONDS)) {
+				throw new ReservationQueueFullException(this.capacity);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReservationQueueFullException(this.capacity);
+		}
+		return command.getResult();
+	}
+
+	private void run() {
+		List<ReservationCommand> batch = new ArrayList<>(this.maxBatchSize);
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				batch.add(this.queue.take());
+				this.queue.drainTo(batch, this.maxBatchSize - 1);
+				process(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				log.error("Unexpected error in reservation sequencer", e);
+				batch.forEach(c -> c.getResult().completeExceptionally(e));
+			} finally {
+				batch.clear();
+			}
+		}
+
+		this.queue.drainTo(batch);
+		batch.forEach(c -> c.getResult().completeExceptionally(new IllegalStateException("Reservation sequencer stopped")));
+	}
+
+	private void process(List<ReservationCommand> batch) {
+		BatchView view = new BatchView();
+		List<ReservationCommand> accepted = new ArrayList<>(batch.size());
+		for (ReservationCommand command : batch) {
+			try {
+				view.accept(command);
+				accepted.add(command);
+			} catch (RuntimeException e) {
+				command.getResult().completeExceptionally(e);
+			}
+		}
+
+		if (accepted.isEmpty()) {
+			return;
+		}
+		this.batchSizes.record(accepted.size());
+
+		try {
+			List<Reservation> results = this.retrier.execute("sequencer", () -> {
+				// a rolled back attempt leaves the generated ids on the entities
+				accepted.stream()
+						.filter(c -> c.getType() == ReservationCommand.Type.RESERVE)
+						.forEach(c -> c.getReservation().setId(c.getId()));
+				return this.writeService.applyBatch(accepted);
+			});
+			for (int i = 0; i < accepted.size(); i++) {
+				accepted.get(i).getResult().complete(results.get(i));
+			}
+		} catch (RuntimeException e) {
+			this.fallbacks.increment();
+			log.warn("Batch of {} reservation commands failed, applying them one by one: {}", accepted.size(), e.getMessage());
+			accepted.forEach(this::applyOne);
+		}
+	}
+
+	private void applyOne(ReservationCommand command) {
+		try {
+			command.getResult().complete(this.retrier.execute(command.getType().name().toLowerCase(Locale.ROOT), () -> apply(command)));
+		} catch (RuntimeException e) {
+			command.getResult().completeExceptionally(e);
+		}
+	}
+
+	private Reservation apply(ReservationCommand command) {
+		switch (command.getType()) {
+		case RESERVE:
+			command.getReservation().setId(command.getId());
+			return this.writeService.reserve(command.getReservation());
+		case UPDATE:
+			return this.writeService.update(command.getReservation(), command.getId());
+		default:
+			this.writeService.cancel(command.getId());
+			return null;
+		}
+	}
+
+	@AllArgsConstructor
+	private static class Stay {
+		private final String siteId;
+		private final LocalDate checkInDate;
+		private final LocalDate checkOutDate;
+		private final boolean committed;
+	}
+
+	@lombok.Value
+	private static class SiteDay {
+		String siteId;
+		LocalDate day;
+	}
+
+	/*
+	 * Committed occupancy as seen by the calendar, adjusted by the commands accepted so far in
+	 * the current batch. Days are checked with the same closed interval as the claim table,
+	 * on the site of the reservation.
+	 */
+	private class BatchView {
+
+		private final Map<SiteDay, UUID> claimedDays = new HashMap<>();
+
+		private final Set<SiteDay> releasedNights = new HashSet<>();
+
+		private final Map<UUID, Stay> touched = new HashMap<>();
+
+		void accept(ReservationCommand command) {
+			switch (command.getType()) {
+			case RESERVE:
+				claim(UUID.randomUUID(), command.getReservation(), null);
+				break;
+			case UPDATE:
+				claim(command.getId(), command.getReservation(), current(command.getId()));
+				break;
+			case CANCEL:
+				release(command.getId(), current(command.getId()));
+				this.touched.put(command.getId(), null);
+				break;
+			}
+		}
+
+		private Stay current(UUID id) {
+			if (this.touched.containsKey(id)) {
+				Stay stay = this.touched.get(id);
+				if (stay == null) {
+					throw new ReservationNotFoundException(id);
+				}
+				return stay;
+			}
+			Reservation reservation = repository.findById(id).orElseThrow(() -> new ReservationNotFoundException(id));
+			return new Stay(reservation.getSiteId(), reservation.getCheckInDate(), reservation.getCheckOutDate(), true);
+		}
+
+		private void claim(UUID owner, Reservation requested, Stay current) {
+			// the site of a reservation does not change on update
+			String siteId = current != null ? current.siteId : requested.getSiteId();
+			LocalDate checkInDate = requested.getCheckInDate();
+			LocalDate checkOutDate = requested.getCheckOutDate();
+
+			for (LocalDate d = checkInDate; !d.isAfter(checkOutDate); d = d.plusDays(1)) {
+				UUID holder = this.claimedDays.get(new SiteDay(siteId, d));
+				if (holder != null && !holder.equals(owner)) {
+					throw new OverlappingDatesException(checkInDate, checkOutDate);
+				}
+			}
+			// a committed stay [a, b] conflicts with [checkIn, checkOut] iff it has a night in [checkIn - 1, checkOut]
+			for (LocalDate n = checkInDate.minusDays(1); !n.isAfter(checkOutDate); n = n.plusDays(1)) {
+				if (this.releasedNights.contains(new SiteDay(siteId, n)) || ownNight(current, n)) {
+					continue;
+				}
+				if (calendar.isOccupied(siteId, n)) {
+					throw new OverlappingDatesException(checkInDate, checkOutDate);
+				}
+			}
+
+			if (current != null) {
+				release(owner, current);
+			}
+			for (LocalDate d = checkInDate; !d.isAfter(checkOutDate); d = d.plusDays(1)) {
+				this.claimedDays.put(new SiteDay(siteId, d), owner);
+			}
+			this.touched.put(owner, new Stay(siteId, checkInDate, checkOutDate, false));
+		}
+
+		private void release(UUID owner, Stay current) {
+			if (current.committed) {
+				for (LocalDate n = current.checkInDate; n.isBefore(current.checkOutDate); n = n.plusDays(1)) {
+					this.releasedNights.add(new SiteDay(current.siteId, n));
+				}
+			} else {
+				this.claimedDays.values().removeIf(owner::equals);
+			}
+		}
+
+		private boolean ownNight(Stay current, LocalDate night) {
+			return current != null && current.committed
+					&& !night.isBefore(current.checkInDate) && night.isBefore(current.checkOutDate);
+		}
+	}
+}
@@ -1,73 +1,391 @@
 package com.nitzer.campsitereservation.services;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import javax.validation.Validator;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Transactional;
 
+import com.nitzer.campsitereservation.dto.AvailabilityBitmap;
+import com.nitzer.campsitereservation.dto.AvailabilityRanges;
+import com.nitzer.campsitereservation.dto.BatchItemResult;
+import com.nitzer.campsitereservation.dto.BatchMode;
+import com.nitzer.campsitereservation.dto.BatchResult;
+import com.nitzer.campsitereservation.dto.DateRange;
+import com.nitzer.campsitereservation.dto.ReservationPage;
 import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.InvalidPageTokenException;
 import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
 import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
-import com.nitzer.campsitereservation.repositories.ReservationRepository;
 
 @Service
 public class ReservationService {
 	
+	private static final String PAGE_TOKEN_SEPARATOR = "/";
+	
+	public static final int MAX_EMAIL_RESULTS = 100;
+	
+	@Autowired
+	private ReservationStore store;
+	
+	@Autowired
+	private DateLockManager lockManager;
+	
+	@Autowired
+	private TransientFailureRetrier retrier;
+	
+	@Autowired
+	private OccupancyCalendar calendar;
+	
+	@Autowired
+	private AvailabilityCache availabilityCache;
+	
+	@Autowired
+	private FreeWindowIndex freeWindowIndex;
+	
+	@Autowired
+	private SiteFanOut siteFanOut;
+	
+	@Autowired
+	private EmailLookupCache emailLookups;
+	
+	@Autowired
+	private ReservationMetrics metrics;
+	
+	@Autowired(required = false)
+	private ReservationSequencer sequencer;
+	
 	@Autowired
-	private ReservationRepository repository;
+	private Validator validator;
 	
-	public List<LocalDate> getAvailableDates(LocalDate dateFrom, LocalDate dateTo){
-		List<Reservation> reservations = this.repository.findByDateInterval(dateFrom, dateTo);
-		List<LocalDate> bookedDates = reservations.stream().flatMap(b -> b.getCheckInDate().datesUntil(b.getCheckOutDate())).collect(Collectors.toList());
-		List<LocalDate> result = dateFrom.datesUntil(dateTo).filter(d -> !bookedDates.contains(d)).collect(Collectors.toList());
-		return result;
+	/*
+	 * Changes after every committed write on the site.
+	 */
+	public String getCalendarVersion(String siteId){
+		return this.calendar.getVersionTag(siteId);
+	}
+	
+	public List<LocalDate> getAvailableDates(String siteId, LocalDate dateFrom, LocalDate dateTo){
+		return this.availabilityCache.get(siteId, dateFrom, dateTo);
+	}
+	
+	/*
+	 * Available dates of every site, read in parallel. With no sites given, every site with some
+	 * reservation plus the default one.
+	 */
+	public Map<String, List<LocalDate>> getAvailableDatesBySite(Collection<String> siteIds, LocalDate dateFrom, LocalDate dateTo){
+		Set<String> sites = new HashSet<>(siteIds);
+		if(sites.isEmpty()) {
+			sites.addAll(this.calendar.getSites());
+			sites.add(Reservation.DEFAULT_SITE);
+		}
+		return this.siteFanOut.map(sites, siteId -> this.availabilityCache.get(siteId, dateFrom, dateTo));
+	}
+	
+	public AvailabilityRanges getAvailableRanges(String siteId, LocalDate dateFrom, LocalDate dateTo){
+		return new AvailabilityRanges(dateFrom, dateTo, this.calendar.getFreeRanges(siteId, dateFrom, dateTo));
+	}
+	
+	public AvailabilityBitmap getAvailableBitmap(String siteId, LocalDate dateFrom, LocalDate dateTo){
+		BitSet free = this.calendar.getFreeBitmap(siteId, dateFrom, dateTo);
+		int nights = (int) Math.max(0, ChronoUnit.DAYS.between(dateFrom, dateTo));
+		return new AvailabilityBitmap(dateFrom, nights, Base64.getEncoder().encodeToString(free.toByteArray()));
+	}
+	
+	public List<DateRange> getFreeWindows(String siteId, LocalDate dateFrom, int nights, int limit){
+		return this.freeWindowIndex.findWindows(siteId, dateFrom, nights, limit);
 	}
 	
-
-	@Transactional(isolation=Isolation.SERIALIZABLE, rollbackFor=Exception.class)
 	public Reservation reserve(Reservation reservation) throws RuntimeException {
-		
-		if(!this.repository.existsOverlappingReservation(reservation.getCheckInDate(), reservation.getCheckOutDate(),null)) {
-			reservation = this.repository.saveAndFlush(reservation);
-		}else{
-			throw new OverlappingDatesException(reservation.getCheckInDate(),reservation.getCheckOutDate());
+		return this.metrics.time("reserve", ReservationMetrics.TOTAL, () -> {
+			if(this.sequencer != null) {
+				return await(this.sequencer.submit(ReservationCommand.reserve(reservation)));
+			}
+			
+			UUID requestedId = reservation.getId();
+			return this.retrier.execute("reserve", () -> {
+				// a rolled back attempt leaves the generated id on the entity
+				reservation.setId(requestedId);
+				return this.lockManager.withLocks(reservation.getSiteId(), reservation.getCheckInDate(), reservation.getCheckOutDate(),
+						() -> this.metrics.time("reserve", ReservationMetrics.PERSIST,
+								() -> this.store.reserve(reservation)));
+			});
+		});
+	}
+
+	/*
+	 * Items are validated and checked against each other in memory, earlier items winning, then
+	 * the remaining ones against the days claimed in the whole batch range with a single query,
+	 * and inserted together. In ATOMIC mode the first failure stops the batch and nothing is made.
+	 * Every reservation of the batch has to be on the same site.
+	 */
+	public BatchResult reserveBatch(List<Reservation> reservations, BatchMode mode) throws RuntimeException {
+		return this.metrics.time("batch", ReservationMetrics.TOTAL, () -> doReserveBatch(reservations, mode));
+	}
+	
+	private BatchResult doReserveBatch(List<Reservation> reservations, BatchMode mode) {
+		BatchItemResult[] results = new BatchItemResult[reservations.size()];
+		TreeMap<LocalDate, Integer> accepted = new TreeMap<>();
+		for(int i = 0; i < reservations.size(); i++) {
+			Reservation reservation = reservations.get(i);
+			reservation.setId(null);
+			List<String> errors = this.validator.validate(reservation).stream()
+					.map(v -> (v.getPropertyPath().toString().isEmpty() ? "reservation" : v.getPropertyPath()) + ": " + v.getMessage())
+					.sorted()
+					.collect(Collectors.toList());
+			if(!errors.isEmpty()) {
+				results[i] = new BatchItemResult(i, HttpStatus.BAD_REQUEST.value(), reservation, errors);
+				continue;
+			}
+			Integer overlapped = overlappedItem(accepted, reservations, reservation);
+			if(overlapped != null) {
+				results[i] = conflict(i, reservation, String.format("Overlaps item %s of the batch", overlapped));
+				continue;
+			}
+			accepted.put(reservation.getCheckInDate(), i);
+		}
+		if(!canProceed(mode, accepted.size(), reservations.size())) {
+			return batchResult(mode, results);
 		}
 		
-		return reservation;
+		String siteId = reservations.get(accepted.firstEntry().getValue()).getSiteId();
+		LocalDate dateFrom = accepted.firstKey();
+		LocalDate dateTo = reservations.get(accepted.lastEntry().getValue()).getCheckOutDate();
+		return this.lockManager.withLocks(siteId, dateFrom, dateTo, () -> {
+			Set<LocalDate> claimed = this.metrics.time("batch", ReservationMetrics.CONFLICT_CHECK,
+					() -> new HashSet<>(this.store.findClaimedDays(siteId, dateFrom, dateTo)));
+			List<Integer> toSave = new ArrayList<>(accepted.size());
+			for(int i : accepted.values()) {
+				Reservation reservation = reservations.get(i);
+				if(reservation.getCheckInDate().datesUntil(reservation.getCheckOutDate().plusDays(1)).anyMatch(claimed::contains)) {
+					results[i] = conflict(i, reservation, new OverlappingDatesException(reservation.getCheckInDate(), reservation.getCheckOutDate()).getMessage());
+				} else {
+					toSave.add(i);
+				}
+			}
+			if(canProceed(mode, toSave.size(), accepted.size())) {
+				saveBatch(reservations, toSave, mode, results);
+			}
+			return batchResult(mode, results);
+		});
 	}
-
-	@Transactional(isolation=Isolation.SERIALIZABLE, rollbackFor=Exception.class)
+	
 	public Reservation update(Reservation reservation, UUID id) throws RuntimeException {
-		
-		Reservation toUpdate = this.repository.findById(id).orElseThrow(() -> new ReservationNotFoundException(id));
-		
-		toUpdate.setCheckInDate(reservation.getCheckInDate());
-		toUpdate.setCheckOutDate(reservation.getCheckOutDate());
-		
-		if(!this.repository.existsOverlappingReservation(reservation.getCheckInDate(), reservation.getCheckOutDate(),toUpdate.getId())) {
-			toUpdate = this.repository.saveAndFlush(toUpdate);
-		}else{
-			throw new OverlappingDatesException(toUpdate.getCheckInDate(),toUpdate.getCheckOutDate());
-		}
-		return toUpdate;
+		return this.metrics.time("update", ReservationMetrics.TOTAL, () -> {
+			if(this.sequencer != null) {
+				return await(this.sequencer.submit(ReservationCommand.update(reservation, id)));
+			}
+			
+			// the site of a reservation does not change, the new dates are claimed on the current one
+			String siteId = getOne(id).getSiteId();
+			return this.retrier.execute("update", () -> this.lockManager.withLocks(siteId, reservation.getCheckInDate(), reservation.getCheckOutDate(),
+					() -> this.metrics.time("update", ReservationMetrics.PERSIST,
+							() -> this.store.update(reservation, id))));
+		});
 	}
 
-	@Transactional(isolation=Isolation.SERIALIZABLE, rollbackFor=Exception.class)
 	public void cancel(UUID id) throws RuntimeException {
-		Reservation toDelete = this.repository.findById(id).orElseThrow(() -> new ReservationNotFoundException(id));
-		this.repository.delete(toDelete);
+		this.metrics.time("cancel", ReservationMetrics.TOTAL, () -> {
+			if(this.sequencer != null) {
+				return await(this.sequencer.submit(ReservationCommand.cancel(id)));
+			}
+			
+			return this.retrier.execute("cancel", () -> this.metrics.time("cancel", ReservationMetrics.PERSIST, () -> {
+				this.store.cancel(id);
+				return null;
+			}));
+		});
 	}
 	
 	public Reservation getOne(UUID id) {
-		return this.repository.findById(id).orElseThrow(() -> new ReservationNotFoundException(id));
+		return this.store.findById(id).orElseThrow(() -> new ReservationNotFoundException(id));
+	}
+	
+	/*
+	 * The first MAX_EMAIL_RESULTS reservations of the email in check-in order, ignoring case and
+	 * surrounding spaces. Answered from the lookup cache or from the email index.
+	 */
+	public List<Reservation> getByEmail(String email){
+		return this.emailLookups.get(Reservation.normalizeEmail(email),
+				normalized -> this.store.findByEmail(normalized, PageRequest.of(0, MAX_EMAIL_RESULTS)));
 	}
 	
 	public List<Reservation> getAll(){
-		return this.repository.findAll();
+		return this.store.findAll();
+	}
+	
+	/*
+	 * Reservations with check-in in [dateFrom, dateTo) ordered by (checkInDate, id), of every site
+	 * when siteId is null. The token
+	 * carries the last row of the previous page, so every page is an index seek whatever its depth.
+	 * It has to be used with the same filters it was returned for. The email is matched as
+	 * getByEmail does, ignoring case and surrounding spaces.
+	 */
+	public ReservationPage getPage(String siteId, LocalDate dateFrom, LocalDate dateTo, String email, String token, int size){
+		Pageable limit = PageRequest.of(0, size + 1);
+		String normalized = Reservation.normalizeEmail(email);
+		List<Reservation> items;
+		if(token == null) {
+			items = siteId == null ? this.store.findPage(dateFrom, dateTo, normalized, limit)
+					: this.store.findSitePage(siteId, dateFrom, dateTo, normalized, limit);
+		} else {
+			String[] last = decodePageToken(token);
+			try {
+				LocalDate afterCheckIn = LocalDate.parse(last[0]);
+				UUID afterId = UUID.fromString(last[1]);
+				items = siteId == null ? this.store.findPageAfter(afterCheckIn, afterId, dateTo, normalized, limit)
+						: this.store.findSitePageAfter(siteId, afterCheckIn, afterId, dateTo, normalized, limit);
+			} catch (DateTimeParseException | IllegalArgumentException e) {
+				throw new InvalidPageTokenException(token);
+			}
+		}
+		
+		if(items.size() <= size) {
+			return new ReservationPage(items, null);
+		}
+		items = items.subList(0, size);
+		Reservation last = items.get(size - 1);
+		return new ReservationPage(items, encodePageToken(last.getCheckInDate(), last.getId()));
+	}
+	
+	/*
+	 * Hands every reservation to the consumer one by one, without holding them all in memory.
+	 */
+	public void streamAll(Consumer<Reservation> consumer){
+		this.store.streamAll(consumer);
+	}
+	
+	/*
+	 * Same nights as getAvailableDates, produced a year at a time instead of as a single list.
+	 */
+	public void streamAvailableDates(String siteId, LocalDate dateFrom, LocalDate dateTo, Consumer<LocalDate> consumer){
+		for(LocalDate chunkFrom = dateFrom; chunkFrom.isBefore(dateTo); chunkFrom = chunkFrom.plusYears(1)) {
+			LocalDate chunkTo = chunkFrom.plusYears(1).isBefore(dateTo) ? chunkFrom.plusYears(1) : dateTo;
+			BitSet free = this.calendar.getFreeBitmap(siteId, chunkFrom, chunkTo);
+			for(int i = free.nextSetBit(0); i >= 0; i = free.nextSetBit(i + 1)) {
+				consumer.accept(chunkFrom.plusDays(i));
+			}
+		}
+	}
+	
+	private static String encodePageToken(LocalDate checkInDate, UUID id) {
+		String key = checkInDate + PAGE_TOKEN_SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	private static String[] decodePageToken(String token) {
+		try {
+			String[] key = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII).split(PAGE_TOKEN_SEPARATOR);
+			if(key.length == 2) {
+				return key;
+			}
+		} catch (IllegalArgumentException e) {
+			// not Base64
+		}
+		throw new InvalidPageTokenException(token);
+	}
+	
+	private void saveBatch(List<Reservation> reservations, List<Integer> toSave, BatchMode mode, BatchItemResult[] results) {
+		List<Reservation> items = toSave.stream().map(reservations::get).collect(Collectors.toList());
+		try {
+			this.retrier.execute("batch", () -> {
+				items.forEach(r -> r.setId(null));
+				return this.metrics.time("batch", ReservationMetrics.PERSIST,
+						() -> this.store.reserveAll(items));
+			});
+			toSave.forEach(i -> results[i] = new BatchItemResult(i, HttpStatus.CREATED.value(), reservations.get(i), null));
+		} catch (OverlappingDatesException e) {
+			// a write that does not take the date locks (sequencer mode) claimed some of the days meanwhile
+			for(int i : toSave) {
+				Reservation reservation = reservations.get(i);
+				reservation.setId(null);
+				if(mode == BatchMode.ATOMIC) {
+					results[i] = conflict(i, reservation, e.getMessage());
+					continue;
+				}
+				try {
+					// one by one like reserve, with its retries and timings, under the locks already held
+					Reservation made = this.retrier.execute("reserve", () -> {
+						reservation.setId(null);
+						return this.metrics.time("reserve", ReservationMetrics.PERSIST, () -> this.store.reserve(reservation));
+					});
+					results[i] = new BatchItemResult(i, HttpStatus.CREATED.value(), made, null);
+				} catch (OverlappingDatesException conflict) {
+					results[i] = conflict(i, reservation, conflict.getMessage());
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Index of an accepted item whose closed [checkIn, checkOut] interval intersects the reservation's.
+	 * Accepted items do not overlap each other, so only the neighbours by check-in date can.
+	 */
+	private static Integer overlappedItem(TreeMap<LocalDate, Integer> accepted, List<Reservation> reservations, Reservation reservation) {
+		Map.Entry<LocalDate, Integer> before = accepted.floorEntry(reservation.getCheckInDate());
+		if(before != null && !reservations.get(before.getValue()).getCheckOutDate().isBefore(reservation.getCheckInDate())) {
+			return before.getValue();
+		}
+		Map.Entry<LocalDate, Integer> after = accepted.higherEntry(reservation.getCheckInDate());
+		if(after != null && !after.getKey().isAfter(reservation.getCheckOutDate())) {
+			return after.getValue();
+		}
+		return null;
+	}
+	
+	private static boolean canProceed(BatchMode mode, int remaining, int total) {
+		return remaining > 0 && (mode == BatchMode.BEST_EFFORT || remaining == total);
+	}
+	
+	private static BatchItemResult conflict(int index, Reservation reservation, String error) {
+		return new BatchItemResult(index, HttpStatus.CONFLICT.value(), reservation, List.of(error));
+	}
+	
+	/*
+	 * Items without a result were not made because another item of an atomic batch failed.
+	 */
+	private static BatchResult batchResult(BatchMode mode, BatchItemResult[] results) {
+		int created = 0;
+		for(int i = 0; i < results.length; i++) {
+			if(results[i] == null) {
+				results[i] = new BatchItemResult(i, HttpStatus.FAILED_DEPENDENCY.value(), null, List.of("Not made because another item of the batch failed"));
+			} else if(results[i].getStatus() == HttpStatus.CREATED.value()) {
+				created++;
+			}
+		}
+		return new BatchResult(mode, created, Arrays.asList(results));
+	}
+	
+	private static Reservation await(CompletableFuture<Reservation> result) {
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
 	}
 }
@@ -0,0 +1,62 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.springframework.data.domain.Pageable;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+/*
+ * Where ReservationService keeps the reservations: the database (DatabaseReservationStore) or,
+ * with reservation.write-mode=journal, the journal (JournalReservationStore). Either one only
+ * shows a write once it is committed, and keeps the occupancy calendar and the email lookups in
+ * step with what it stores. The finders answer like the ReservationRepository ones of the same name.
+ */
+public interface ReservationStore {
+
+	public Optional<Reservation> findById(UUID id);
+
+	public List<Reservation> findAll();
+
+	/*
+	 * Hands the reservations to the consumer one by one, without holding them all in memory.
+	 */
+	public void streamAll(Consumer<Reservation> consumer);
+
+	public List<Reservation> findByEmail(String email, Pageable pageable);
+
+	public List<Reservation> findPage(LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable);
+
+	public List<Reservation> findPageAfter(LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable);
+
+	public List<Reservation> findSitePage(String siteId, LocalDate dateFrom, LocalDate dateTo, String email, Pageable pageable);
+
+	public List<Reservation> findSitePageAfter(String siteId, LocalDate afterCheckIn, UUID afterId, LocalDate dateTo, String email, Pageable pageable);
+
+	/*
+	 * Days in [dateFrom, dateTo] claimed on the site, check-in and check-out days included.
+	 */
+	public List<LocalDate> findClaimedDays(String siteId, LocalDate dateFrom, LocalDate dateTo);
+
+	/*
+	 * Assigns a new id to the reservation. Throws OverlappingDatesException when some of its
+	 * days are already claimed.
+	 */
+	public Reservation reserve(Reservation reservation);
+
+	/*
+	 * Every reservation or none. The caller has already checked they do not overlap each other.
+	 */
+	public List<Reservation> reserveAll(List<Reservation> reservations);
+
+	/*
+	 * Moves the reservation to the dates of the given one, on the same site.
+	 */
+	public Reservation update(Reservation reservation, UUID id);
+
+	public void cancel(UUID id);
+}
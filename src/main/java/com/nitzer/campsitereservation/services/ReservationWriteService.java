@@ -0,0 +1,279 @@
+package com.nitzer.campsitereservation.services;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.nitzer.campsitereservation.entities.BookedDate;
+import com.nitzer.campsitereservation.entities.Hold;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.entities.ReservationStatus;
+import com.nitzer.campsitereservation.exceptions.HoldNotFoundException;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+import com.nitzer.campsitereservation.repositories.BookedDateRepository;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+/*
+ * Transactional part of the reservation writes. ReservationService calls it while holding the
+ * date locks, so every transaction has committed or rolled back before its locks are released.
+ */
+@Service
+public class ReservationWriteService {
+	
+	@Autowired
+	private ReservationRepository repository;
+	
+	@Autowired
+	private BookedDateRepository bookedDateRepository;
+	
+	@Autowired
+	private HoldRepository holdRepository;
+	
+	@Autowired
+	private OccupancyCalendar calendar;
+	
+	@Autowired
+	private CalendarSnapshots snapshots;
+	
+	@Autowired
+	private EmailLookupCache emailLookups;
+	
+	@Autowired
+	private ReservationMetrics metrics;
+	
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public Reservation reserve(Reservation reservation) throws RuntimeException {
+		reservation = doReserve(reservation);
+		flushClaims("reserve", reservation.getCheckInDate(), reservation.getCheckOutDate());
+		return reservation;
+	}
+
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public Reservation update(Reservation reservation, UUID id) throws RuntimeException {
+		Reservation updated = doUpdate(reservation, id);
+		flushClaims("update", updated.getCheckInDate(), updated.getCheckOutDate());
+		return updated;
+	}
+
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public void cancel(UUID id) throws RuntimeException {
+		doCancel(id);
+	}
+	
+	/*
+	 * Inserts the reservations and their claims with one saveAll each, so they go out in JDBC
+	 * batches. The caller has already checked they do not overlap each other.
+	 */
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public List<Reservation> reserveAll(List<Reservation> reservations) throws RuntimeException {
+		List<Reservation> saved = this.repository.saveAll(reservations);
+		List<BookedDate> claims = new ArrayList<>();
+		for (Reservation reservation : saved) {
+			reservation.getCheckInDate().datesUntil(reservation.getCheckOutDate().plusDays(1))
+					.forEach(d -> claims.add(new BookedDate(reservation.getSiteId(), d, reservation.getId())));
+		}
+		this.bookedDateRepository.saveAll(claims);
+		flushClaims("batch", saved.stream().map(Reservation::getCheckInDate).min(Comparator.naturalOrder()).get(),
+				saved.stream().map(Reservation::getCheckOutDate).max(Comparator.naturalOrder()).get());
+		
+		saved.forEach(r -> this.snapshots.record(r.getSiteId(), r.getCheckInDate(), r.getCheckOutDate(),
+				() -> this.calendar.book(r.getSiteId(), r.getCheckInDate(), r.getCheckOutDate())));
+		saved.forEach(r -> this.emailLookups.evictAfterCommit(r.getEmailNormalized()));
+		return saved;
+	}
+	
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public Hold hold(Hold hold) throws RuntimeException {
+		Hold saved = this.holdRepository.save(hold);
+		claimDates(saved.getId(), saved.getSiteId(), saved.getCheckInDate(), saved.getCheckOutDate());
+		flushClaims("hold", saved.getCheckInDate(), saved.getCheckOutDate());
+		
+		this.snapshots.record(saved.getSiteId(), saved.getCheckInDate(), saved.getCheckOutDate(),
+				() -> this.calendar.book(saved.getSiteId(), saved.getCheckInDate(), saved.getCheckOutDate()));
+		return saved;
+	}
+	
+	/*
+	 * Turns an unexpired hold into a reservation for the same dates. The nights stay occupied,
+	 * only the owner of the claimed days changes.
+	 */
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public Reservation confirmHold(UUID id, Instant now) throws RuntimeException {
+		Hold hold = this.holdRepository.findById(id)
+				.filter(h -> h.getExpiresAt().isAfter(now))
+				.orElseThrow(() -> new HoldNotFoundException(id));
+		
+		this.bookedDateRepository.deleteByReservationId(hold.getId());
+		this.holdRepository.delete(hold);
+		Reservation reservation = this.repository.save(hold.toReservation());
+		claimDates(reservation.getId(), reservation.getSiteId(), reservation.getCheckInDate(), reservation.getCheckOutDate());
+		flushClaims("confirm", reservation.getCheckInDate(), reservation.getCheckOutDate());
+		this.emailLookups.evictAfterCommit(reservation.getEmailNormalized());
+		return reservation;
+	}
+	
+	/*
+	 * Releases the hold, or only if it has expired at the given time when expiredAt is not null.
+	 * Returns false when there was nothing to release.
+	 */
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public boolean releaseHold(UUID id, Instant expiredAt) throws RuntimeException {
+		Optional<Hold> hold = this.holdRepository.findById(id)
+				.filter(h -> expiredAt == null || !h.getExpiresAt().isAfter(expiredAt));
+		if(hold.isEmpty()) {
+			return false;
+		}
+		
+		this.bookedDateRepository.deleteByReservationId(id);
+		this.holdRepository.delete(hold.get());
+		Hold released = hold.get();
+		this.snapshots.record(released.getSiteId(), released.getCheckInDate(), released.getCheckOutDate(),
+				() -> this.calendar.release(released.getSiteId(), released.getCheckInDate(), released.getCheckOutDate()));
+		return true;
+	}
+	
+	/*
+	 * Applies every command in a single transaction with one final flush. Any failure rolls
+	 * back the whole batch, the caller is expected to retry the commands one by one.
+	 */
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public List<Reservation> applyBatch(List<ReservationCommand> commands) throws RuntimeException {
+		List<Reservation> results = new ArrayList<>(commands.size());
+		for (ReservationCommand command : commands) {
+			switch (command.getType()) {
+			case RESERVE:
+				results.add(doReserve(command.getReservation()));
+				break;
+			case UPDATE:
+				results.add(doUpdate(command.getReservation(), command.getId()));
+				break;
+			case CANCEL:
+				doCancel(command.getId());
+				results.add(null);
+				break;
+			}
+		}
+		this.bookedDateRepository.flush();
+		return results;
+	}
+	
+	/*
+	 * Moves up to limit cancelled or checked-out reservations to bookings_archive, with the claimed
+	 * days of the checked-out ones. The past nights of the checked-out ones are released from the
+	 * calendar, as a reload from the repository no longer finds them. Returns the number of
+	 * reservations moved.
+	 */
+	@Transactional(isolation=Isolation.READ_COMMITTED, rollbackFor=Exception.class)
+	public int archive(LocalDate today, int limit) throws RuntimeException {
+		List<Reservation> archivable = this.repository.findArchivable(today, limit);
+		if(archivable.isEmpty()) {
+			return 0;
+		}
+		List<UUID> ids = archivable.stream()
+				.map(Reservation::getId)
+				.collect(Collectors.toList());
+		this.bookedDateRepository.deleteByReservationIds(ids);
+		this.repository.copyToArchive(ids);
+		// the cancelled ones were released when they were cancelled
+		archivable.stream()
+				.filter(r -> r.getStatus() == ReservationStatus.ACTIVE)
+				.forEach(r -> this.snapshots.record(r.getSiteId(), r.getCheckInDate(), r.getCheckOutDate(),
+						() -> this.calendar.release(r.getSiteId(), r.getCheckInDate(), r.getCheckOutDate())));
+		this.emailLookups.evictAllAfterCommit();
+		return this.repository.deleteByIds(ids);
+	}
+	
+	private Reservation doReserve(Reservation reservation) {
+		reservation = this.repository.save(reservation);
+		claimDates(reservation.getId(), reservation.getSiteId(), reservation.getCheckInDate(), reservation.getCheckOutDate());
+		
+		String siteId = reservation.getSiteId();
+		LocalDate checkInDate = reservation.getCheckInDate();
+		LocalDate checkOutDate = reservation.getCheckOutDate();
+		this.snapshots.record(siteId, checkInDate, checkOutDate, () -> this.calendar.book(siteId, checkInDate, checkOutDate));
+		this.emailLookups.evictAfterCommit(reservation.getEmailNormalized());
+		
+		return reservation;
+	}
+	
+	private Reservation doUpdate(Reservation reservation, UUID id) {
+		Reservation toUpdate = this.repository.findById(id).orElseThrow(() -> new ReservationNotFoundException(id));
+		
+		LocalDate oldCheckInDate = toUpdate.getCheckInDate();
+		LocalDate oldCheckOutDate = toUpdate.getCheckOutDate();
+		
+		toUpdate.setCheckInDate(reservation.getCheckInDate());
+		toUpdate.setCheckOutDate(reservation.getCheckOutDate());
+		// the new stay was validated together with its own arrival and departure, keeping the stored ones could make it invalid
+		toUpdate.setArrivalDate(reservation.getArrivalDate());
+		toUpdate.setDepartureDate(reservation.getDepartureDate());
+
+		this.bookedDateRepository.deleteByReservationId(toUpdate.getId());
+		toUpdate = this.repository.save(toUpdate);
+		claimDates(toUpdate.getId(), toUpdate.getSiteId(), toUpdate.getCheckInDate(), toUpdate.getCheckOutDate());
+		
+		String siteId = toUpdate.getSiteId();
+		LocalDate newCheckInDate = toUpdate.getCheckInDate();
+		LocalDate newCheckOutDate = toUpdate.getCheckOutDate();
+		// one change spanning both stays, the nights between them are reloaded as they are
+		LocalDate changedFrom = oldCheckInDate.isBefore(newCheckInDate) ? oldCheckInDate : newCheckInDate;
+		LocalDate changedTo = oldCheckOutDate.isAfter(newCheckOutDate) ? oldCheckOutDate : newCheckOutDate;
+		this.snapshots.record(siteId, changedFrom, changedTo,
+				() -> this.calendar.move(siteId, oldCheckInDate, oldCheckOutDate, newCheckInDate, newCheckOutDate));
+		this.emailLookups.evictAfterCommit(toUpdate.getEmailNormalized());
+		
+		return toUpdate;
+	}
+	
+	/*
+	 * The reservation is only marked as cancelled, its claimed days are deleted so the dates can
+	 * be reserved again. ReservationArchiver moves it out of bookings later.
+	 */
+	private void doCancel(UUID id) {
+		Reservation toCancel = this.repository.findById(id).orElseThrow(() -> new ReservationNotFoundException(id));
+		this.bookedDateRepository.deleteByReservationId(toCancel.getId());
+		this.repository.updateStatus(toCancel.getId(), ReservationStatus.CANCELLED);
+		
+		this.snapshots.record(toCancel.getSiteId(), toCancel.getCheckInDate(), toCancel.getCheckOutDate(),
+				() -> this.calendar.release(toCancel.getSiteId(), toCancel.getCheckInDate(), toCancel.getCheckOutDate()));
+		this.emailLookups.evictAfterCommit(toCancel.getEmailNormalized());
+	}
+	
+	/*
+	 * One row per day of the reservation or hold on its site, both check-in and check-out included.
+	 */
+	private void claimDates(UUID owner, String siteId, LocalDate checkInDate, LocalDate checkOutDate) {
+		List<BookedDate> dates = checkInDate.datesUntil(checkOutDate.plusDays(1))
+				.map(d -> new BookedDate(siteId, d, owner))
+				.collect(Collectors.toList());
+		this.bookedDateRepository.saveAll(dates);
+	}
+	
+	/*
+	 * Flushes the pending claims, so a date already held by another reservation fails here
+	 * on the unique index instead of at commit time.
+	 */
+	private void flushClaims(String method, LocalDate checkInDate, LocalDate checkOutDate) {
+		this.metrics.time(method, ReservationMetrics.CONFLICT_CHECK, () -> {
+			try {
+				this.bookedDateRepository.flush();
+				return null;
+			} catch (DataIntegrityViolationException e) {
+				throw new OverlappingDatesException(checkInDate, checkOutDate);
+			}
+		});
+	}
+}
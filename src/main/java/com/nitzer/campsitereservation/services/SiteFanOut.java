@@ -0,0 +1,70 @@
+package com.nitzer.campsitereservation.services;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/*
+ * Bounded pool that reads several sites at once. Every site has its own calendar and lock, so
+ * the reads do not contend. When every thread is busy and the queue is full the caller runs the
+ * read itself, so a burst of requests slows down instead of piling up work or failing.
+ */
+@Component
+public class SiteFanOut {
+
+	private final ThreadPoolExecutor executor;
+
+	public SiteFanOut(MeterRegistry registry,
+			@Value("${reservation.fan-out.threads:4}") int threads,
+			@Value("${reservation.fan-out.queue-capacity:256}") int queueCapacity) {
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+			Thread thread = new Thread(r, "site-fan-out-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+		new ExecutorServiceMetrics(this.executor, "site.fan-out", Tags.empty()).bindTo(registry);
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.executor.shutdown();
+	}
+
+	/*
+	 * Result of read for every site, ordered by site id.
+	 */
+	public <T> Map<String, T> map(Collection<String> siteIds, Function<String, T> read) {
+		Map<String, CompletableFuture<T>> futures = new TreeMap<>();
+		siteIds.forEach(id -> futures.put(id, CompletableFuture.supplyAsync(() -> read.apply(id), this.executor)));
+
+		Map<String, T> results = new LinkedHashMap<>();
+		try {
+			futures.forEach((id, result) -> results.put(id, result.join()));
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		return results;
+	}
+}
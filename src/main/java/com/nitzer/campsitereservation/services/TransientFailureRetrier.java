@@ -0,0 +1,98 @@
+package com.nitzer.campsitereservation.services;
+
+import java.sql.SQLTransientException;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.classify.BinaryExceptionClassifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
+import org.springframework.retry.listener.RetryListenerSupport;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Retries a reservation write when it fails for a transient concurrency reason (lock timeout,
+ * deadlock, serialization failure). Business outcomes such as OverlappingDatesException or
+ * ReservationNotFoundException are never retried.
+ */
+@Slf4j
+@Component
+public class TransientFailureRetrier {
+
+	private final RetryTemplate retryTemplate = new RetryTemplate();
+
+	private final BinaryExceptionClassifier classifier;
+
+	private final MeterRegistry registry;
+
+	public TransientFailureRetrier(MeterRegistry registry,
+			@Value("${reservation.retry.max-attempts:4}") int maxAttempts,
+			@Value("${reservation.retry.initial-interval:20}") long initialInterval,
+			@Value("${reservation.retry.max-interval:500}") long maxInterval) {
+		Map<Class<? extends Throwable>, Boolean> retryable = Map.of(
+				TransientDataAccessException.class, true,
+				SQLTransientException.class, true,
+				DataIntegrityViolationException.class, false,
+				OverlappingDatesException.class, false,
+				ReservationNotFoundException.class, false);
+		this.classifier = new BinaryExceptionClassifier(retryable, false);
+		this.classifier.setTraverseCauses(true);
+		this.registry = registry;
+
+		ExponentialRandomBackOffPolicy backOffPolicy = new ExponentialRandomBackOffPolicy();
+		backOffPolicy.setInitialInterval(initialInterval);
+		backOffPolicy.setMultiplier(2);
+		backOffPolicy.setMaxInterval(maxInterval);
+
+		this.retryTemplate.setRetryPolicy(new SimpleRetryPolicy(maxAttempts, retryable, true));
+		this.retryTemplate.setBackOffPolicy(backOffPolicy);
+		this.retryTemplate.registerListener(new MetricsListener());
+	}
+
+	public <T> T execute(String operation, Supplier<T> action) {
+		return this.retryTemplate.execute(context -> {
+			context.setAttribute(RetryContext.NAME, operation);
+			return action.get();
+		});
+	}
+
+	private class MetricsListener extends RetryListenerSupport {
+
+		@Override
+		public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+			if (classifier.classify(throwable)) {
+				registry.counter("reservation.retry.attempts", "operation", operation(context), "exception", throwable.getClass().getSimpleName()).increment();
+				log.debug("Transient failure on {}, attempt {}: {}", operation(context), context.getRetryCount(), throwable.getMessage());
+			}
+		}
+
+		@Override
+		public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+			if (throwable == null) {
+				if (context.getRetryCount() > 0) {
+					registry.counter("reservation.retry.recovered", "operation", operation(context)).increment();
+				}
+			} else if (classifier.classify(throwable)) {
+				registry.counter("reservation.retry.exhausted", "operation", operation(context)).increment();
+				log.warn("Giving up on {} after {} attempts: {}", operation(context), context.getRetryCount(), throwable.getMessage());
+			}
+		}
+
+		private String operation(RetryContext context) {
+			Object name = context.getAttribute(RetryContext.NAME);
+			return name == null ? "unknown" : name.toString();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package db.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+/*
+ * Recomputes email_normalized with Reservation.normalizeEmail, the same code that fills it on
+ * every write, instead of the SQL lower(trim(email)) V8 backfilled it with.
+ */
+public class V9__Normalize_booking_emails extends BaseJavaMigration {
+
+	private static final int BATCH_SIZE = 500;
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		try (PreparedStatement select = connection.prepareStatement("SELECT id, email from bookings");
+				PreparedStatement update = connection.prepareStatement("UPDATE bookings SET email_normalized = ? WHERE id = ?");
+				ResultSet rows = select.executeQuery()) {
+			int batched = 0;
+			while (rows.next()) {
+				update.setString(1, Reservation.normalizeEmail(rows.getString("email")));
+				update.setObject(2, rows.getObject("id"));
+				update.addBatch();
+				if (++batched % BATCH_SIZE == 0) {
+					update.executeBatch();
+				}
+			}
+			update.executeBatch();
+		}
+	}
+}
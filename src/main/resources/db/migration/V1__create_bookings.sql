@@ -0,0 +1,21 @@
+create table bookings (
+	id binary not null,
+	arrival_date date not null,
+	check_in_date date not null,
+	check_out_date date not null,
+	departure_date date not null,
+	email varchar(320),
+	full_name varchar(100),
+	primary key (id)
+);
+
+create table booked_dates (
+	id binary not null,
+	booked_day date not null,
+	reservation_id binary not null,
+	primary key (id)
+);
+
+create index idx_booked_dates_reservation on booked_dates (reservation_id);
+
+alter table booked_dates add constraint uk_booked_dates_day unique (booked_day);
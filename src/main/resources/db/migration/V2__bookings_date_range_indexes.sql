@@ -0,0 +1,5 @@
+-- Overlap predicate: :dateFrom <= check_out_date and :dateTo >= check_in_date.
+-- Past stays are the bulk of the table and all of them end before :dateFrom, so the index
+-- leads with check_out_date and only the current and future stays are read. check_in_date
+-- is kept in the index so the second half of the predicate is checked without a row lookup.
+create index idx_bookings_check_out_in on bookings (check_out_date, check_in_date);
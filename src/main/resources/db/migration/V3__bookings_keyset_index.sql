@@ -0,0 +1,2 @@
+-- Keyset pagination of GET /reservation: ORDER BY check_in_date, id and seek past the last row.
+create index idx_bookings_check_in_id on bookings (check_in_date, id);
@@ -0,0 +1,14 @@
+-- Dates held while a guest pays. Their days are claimed in booked_dates like a reservation's.
+create table holds (
+	id binary not null,
+	arrival_date date not null,
+	check_in_date date not null,
+	check_out_date date not null,
+	departure_date date not null,
+	email varchar(320),
+	full_name varchar(100),
+	expires_at timestamp not null,
+	primary key (id)
+);
+
+create index idx_holds_check_out_in on holds (check_out_date, check_in_date);
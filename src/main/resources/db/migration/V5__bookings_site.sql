@@ -0,0 +1,15 @@
+-- Every reservation, hold and claimed day belongs to a site. Existing rows go to the default site.
+alter table bookings add column site_id varchar(64) default 'default' not null;
+alter table holds add column site_id varchar(64) default 'default' not null;
+alter table booked_dates add column site_id varchar(64) default 'default' not null;
+
+-- a day can be claimed once per site
+alter table booked_dates drop constraint uk_booked_dates_day;
+alter table booked_dates add constraint uk_booked_dates_site_day unique (site_id, booked_day);
+
+-- date range lookups always filter by site first
+drop index idx_bookings_check_out_in;
+create index idx_bookings_site_check_out_in on bookings (site_id, check_out_date, check_in_date);
+create index idx_bookings_site_check_in_id on bookings (site_id, check_in_date, id);
+drop index idx_holds_check_out_in;
+create index idx_holds_site_check_out_in on holds (site_id, check_out_date, check_in_date);
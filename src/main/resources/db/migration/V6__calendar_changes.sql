@@ -0,0 +1,20 @@
+-- Night ranges of a site changed by every committed write, in commit-sequence order. On startup
+-- only the ranges changed after the calendar snapshot are read back from the reservations.
+create table calendar_changes (
+	seq bigint auto_increment not null,
+	site_id varchar(64) not null,
+	date_from date not null,
+	date_to date not null,
+	primary key (seq)
+);
+
+-- A single row: the id of this database, so a snapshot taken against another one is never loaded,
+-- and the sequence of the last snapshot, changes up to it have been pruned.
+create table calendar_checkpoint (
+	id int not null,
+	store_id binary not null,
+	watermark bigint not null,
+	primary key (id)
+);
+
+insert into calendar_checkpoint (id, store_id, watermark) values (1, random_uuid(), 0);
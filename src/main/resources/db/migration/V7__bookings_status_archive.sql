@@ -0,0 +1,25 @@
+-- Cancelling a reservation only changes its status. Cancelled and checked-out reservations are
+-- moved to bookings_archive in batches, so bookings only keeps the active current and future stays.
+alter table bookings add column status varchar(16) default 'ACTIVE' not null;
+
+create table bookings_archive (
+	id binary not null,
+	site_id varchar(64) not null,
+	arrival_date date not null,
+	check_in_date date not null,
+	check_out_date date not null,
+	departure_date date not null,
+	email varchar(320),
+	full_name varchar(100),
+	status varchar(16) not null,
+	archived_at timestamp not null,
+	primary key (id)
+);
+
+create index idx_bookings_archive_site_check_in on bookings_archive (site_id, check_in_date);
+
+-- the overlap checks read the status from the index as well
+drop index idx_bookings_site_check_out_in;
+create index idx_bookings_site_check_out_in on bookings (site_id, check_out_date, check_in_date, status);
+-- batches of the archive job: cancelled ones, and active ones by check-out date
+create index idx_bookings_status_check_out on bookings (status, check_out_date);
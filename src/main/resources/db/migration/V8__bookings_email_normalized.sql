@@ -0,0 +1,5 @@
+-- Lookups by email go to the trimmed, lower-cased copy of the email, read in check-in order from
+-- its own index, so they cost the same whatever the size of bookings.
+alter table bookings add column email_normalized varchar(320);
+update bookings set email_normalized = lower(trim(email));
+create index idx_bookings_email_check_in_id on bookings (email_normalized, check_in_date, id);
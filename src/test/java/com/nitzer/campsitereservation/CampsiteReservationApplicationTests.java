@@ -1,14 +1,19 @@
 package com.nitzer.campsitereservation;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -24,10 +29,16 @@ import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nitzer.campsitereservation.dto.AvailabilityBitmap;
+import com.nitzer.campsitereservation.dto.AvailabilityFormat;
+import com.nitzer.campsitereservation.dto.AvailabilityRanges;
+import com.nitzer.campsitereservation.dto.ReservationPage;
+import com.nitzer.campsitereservation.entities.Hold;
 import com.nitzer.campsitereservation.entities.Reservation;
 import com.nitzer.campsitereservation.repositories.ReservationRepository;
 
@@ -315,6 +326,232 @@ class CampsiteReservationApplicationTests {
 	    }
     
 	
+	@Test
+	@Order(8)
+	public void conditionalGetsAnswerNotModifiedUntilAWriteCommits() throws Exception {
+		String url = host + port + "/reservation/available?dateFrom=" + today + "&dateTo=" + today.plusMonths(1);
+		ResponseEntity<Object> first = this.restTemplate.getForEntity(url, Object.class);
+		String etag = first.getHeaders().getETag();
+		assertTrue(etag != null);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(etag);
+		ResponseEntity<Object> unchanged = this.restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), Object.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+
+		Reservation reservation = new Reservation();
+		reservation.setArrivalDate(today.plusDays(9));
+		reservation.setDepartureDate(today.plusDays(11));
+		reservation.setCheckInDate(today.plusDays(10));
+		reservation.setCheckOutDate(today.plusDays(11));
+		reservation.setEmail("etag@test.com");
+		reservation.setFullName("Etag");
+		Reservation created = objectMapper.convertValue(this.restTemplate.postForEntity(host + port + "/reservation", reservation, Object.class).getBody(), Reservation.class);
+
+		ResponseEntity<Object> changed = this.restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), Object.class);
+		assertEquals(HttpStatus.OK, changed.getStatusCode());
+
+		String reservationUrl = host + port + "/reservation/" + created.getId();
+		HttpHeaders reservationHeaders = new HttpHeaders();
+		reservationHeaders.setIfNoneMatch(this.restTemplate.getForEntity(reservationUrl, Object.class).getHeaders().getETag());
+		ResponseEntity<Object> sameReservation = this.restTemplate.exchange(reservationUrl, HttpMethod.GET, new HttpEntity<>(reservationHeaders), Object.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, sameReservation.getStatusCode());
+
+		// the reservation ETag follows its own state, not the writes on other reservations
+		Reservation other = objectMapper.convertValue(reservation, Reservation.class);
+		other.setArrivalDate(today.plusDays(19));
+		other.setDepartureDate(today.plusDays(21));
+		other.setCheckInDate(today.plusDays(20));
+		other.setCheckOutDate(today.plusDays(21));
+		Reservation otherCreated = objectMapper.convertValue(this.restTemplate.postForEntity(host + port + "/reservation", other, Object.class).getBody(), Reservation.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, this.restTemplate.exchange(reservationUrl, HttpMethod.GET, new HttpEntity<>(reservationHeaders), Object.class).getStatusCode());
+
+		reservation.setArrivalDate(today.plusDays(8));
+		this.restTemplate.put(reservationUrl, reservation);
+		assertEquals(HttpStatus.OK, this.restTemplate.exchange(reservationUrl, HttpMethod.GET, new HttpEntity<>(reservationHeaders), Object.class).getStatusCode());
+		this.restTemplate.delete(host + port + "/reservation/" + otherCreated.getId());
+	}
+	
+	@Test
+	@Order(9)
+	public void availabilityAsRangesAndBitmap() throws Exception {
+		String url = host + port + "/reservation/available?dateFrom=" + today + "&dateTo=" + today.plusMonths(1);
+		
+		ResponseEntity<AvailabilityRanges> ranges = this.restTemplate.getForEntity(url + "&format=ranges", AvailabilityRanges.class);
+		long rangeNights = ranges.getBody().getFree().stream().mapToLong(r -> ChronoUnit.DAYS.between(r.getStart(), r.getEnd())).sum();
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setAccept(List.of(AvailabilityFormat.BITMAP.getMediaType()));
+		ResponseEntity<AvailabilityBitmap> bitmap = this.restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), AvailabilityBitmap.class);
+		BitSet bits = BitSet.valueOf(Base64.getDecoder().decode(bitmap.getBody().getBitmap()));
+		
+		List<?> dates = this.restTemplate.getForObject(url, List.class);
+		assertEquals(dates.size(), rangeNights);
+		assertEquals(dates.size(), bits.cardinality());
+	}
+	
+	@Test
+	@Order(10)
+	public void exportAndAvailabilityAsNdjson() throws Exception {
+		String export = this.restTemplate.getForObject(host + port + "/reservation/export", String.class);
+		assertEquals(this.repository.count(), export.lines().count());
+		assertEquals(this.repository.count(), export.lines().map(l -> {
+			try {
+				return objectMapper.readValue(l, Reservation.class).getId();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}).distinct().count());
+		
+		String query = "?dateFrom=" + today + "&dateTo=" + today.plusYears(2);
+		String stream = this.restTemplate.getForObject(host + port + "/reservation/available/stream" + query, String.class);
+		List<?> dates = this.restTemplate.getForObject(host + port + "/reservation/available" + query, List.class);
+		assertEquals(dates.size(), stream.lines().count());
+		assertEquals("\"" + dates.get(0) + "\"", stream.lines().findFirst().get());
+		// a window of every possible date is refused instead of materialized
+		String everything = "?dateFrom=" + LocalDate.of(1, 1, 1) + "&dateTo=" + LocalDate.of(9999, 12, 31);
+		assertEquals(HttpStatus.BAD_REQUEST, this.restTemplate.getForEntity(host + port + "/reservation/available" + everything, String.class).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, this.restTemplate.getForEntity(host + port + "/reservation/available/stream" + everything, String.class).getStatusCode());
+	}
+	
+	@Test
+	@Order(11)
+	public void listReservationsPageByPage() throws Exception {
+		List<UUID> ids = new ArrayList<>();
+		String next = null;
+		do {
+			String url = host + port + "/reservation?size=2" + (next == null ? "" : "&pageToken=" + next);
+			ReservationPage page = this.restTemplate.getForObject(url, ReservationPage.class);
+			assertTrue(page.getItems().size() <= 2);
+			page.getItems().forEach(r -> ids.add(r.getId()));
+			next = page.getNext();
+		} while (next != null);
+		
+		assertEquals(this.repository.count(), ids.size());
+		assertEquals(ids.size(), ids.stream().distinct().count());
+		
+		ResponseEntity<String> invalid = this.restTemplate.getForEntity(host + port + "/reservation?pageToken=not-a-token", String.class);
+		assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatusCode());
+	}
+	
+	@Test
+	@Order(12)
+	public void retriedPostWithIdempotencyKeyIsAnsweredOnce() throws Exception {
+		AvailabilityRanges ranges = this.restTemplate.getForObject(host + port + "/reservation/available?format=ranges&dateFrom="
+				+ today.plusDays(1) + "&dateTo=" + today.plusDays(28), AvailabilityRanges.class);
+		LocalDate free = ranges.getFree().stream().filter(r -> ChronoUnit.DAYS.between(r.getStart(), r.getEnd()) >= 3)
+				.findFirst().orElseThrow().getStart();
+		
+		Reservation reservation = new Reservation();
+		reservation.setArrivalDate(free);
+		reservation.setDepartureDate(free.plusDays(2));
+		reservation.setCheckInDate(free.plusDays(1));
+		reservation.setCheckOutDate(free.plusDays(2));
+		reservation.setEmail("retry@test.com");
+		reservation.setFullName("Retry");
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Idempotency-Key", UUID.randomUUID().toString());
+		long before = this.repository.count();
+		
+		ResponseEntity<Reservation> first = this.restTemplate.postForEntity(host + port + "/reservation", new HttpEntity<>(reservation, headers), Reservation.class);
+		ResponseEntity<Reservation> retry = this.restTemplate.postForEntity(host + port + "/reservation", new HttpEntity<>(reservation, headers), Reservation.class);
+		assertEquals(HttpStatus.CREATED, first.getStatusCode());
+		assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+		assertEquals(first.getBody().getId(), retry.getBody().getId());
+		assertEquals(first.getHeaders().getLocation(), retry.getHeaders().getLocation());
+		assertEquals(before + 1, this.repository.count());
+		
+		reservation.setFullName("Someone else");
+		ResponseEntity<String> reused = this.restTemplate.postForEntity(host + port + "/reservation", new HttpEntity<>(reservation, headers), String.class);
+		assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+		
+		this.restTemplate.delete(host + port + "/reservation/" + first.getBody().getId());
+	}
+	
+	@Test
+	@Order(13)
+	public void holdAndConfirm() throws Exception {
+		AvailabilityRanges ranges = this.restTemplate.getForObject(host + port + "/reservation/available?format=ranges&dateFrom="
+				+ today.plusDays(1) + "&dateTo=" + today.plusDays(28), AvailabilityRanges.class);
+		LocalDate free = ranges.getFree().stream().filter(r -> ChronoUnit.DAYS.between(r.getStart(), r.getEnd()) >= 3)
+				.findFirst().orElseThrow().getStart();
+		
+		Reservation reservation = new Reservation();
+		reservation.setArrivalDate(free);
+		reservation.setDepartureDate(free.plusDays(2));
+		reservation.setCheckInDate(free.plusDays(1));
+		reservation.setCheckOutDate(free.plusDays(2));
+		reservation.setEmail("hold@test.com");
+		reservation.setFullName("Hold");
+		
+		ResponseEntity<Hold> hold = this.restTemplate.postForEntity(host + port + "/hold", reservation, Hold.class);
+		assertEquals(HttpStatus.CREATED, hold.getStatusCode());
+		assertEquals(HttpStatus.CONFLICT, this.restTemplate.postForEntity(host + port + "/reservation", reservation, String.class).getStatusCode());
+		
+		ResponseEntity<Reservation> confirmed = this.restTemplate.postForEntity(host + port + "/hold/" + hold.getBody().getId() + "/confirm", null, Reservation.class);
+		assertEquals(HttpStatus.CREATED, confirmed.getStatusCode());
+		assertEquals(reservation.getCheckInDate(), confirmed.getBody().getCheckInDate());
+		assertEquals(HttpStatus.NOT_FOUND, this.restTemplate.getForEntity(host + port + "/hold/" + hold.getBody().getId(), String.class).getStatusCode());
+		
+		this.restTemplate.delete(host + port + "/reservation/" + confirmed.getBody().getId());
+		ResponseEntity<Hold> again = this.restTemplate.postForEntity(host + port + "/hold", reservation, Hold.class);
+		assertEquals(HttpStatus.CREATED, again.getStatusCode());
+		ResponseEntity<Void> released = this.restTemplate.exchange(host + port + "/hold/" + again.getBody().getId(), HttpMethod.DELETE, null, Void.class);
+		assertEquals(HttpStatus.OK, released.getStatusCode());
+	}
+	
+	@Test
+	@Order(14)
+	public void sitesAreBookedIndependently() throws Exception {
+		List<Reservation> created = new ArrayList<>();
+		for (String site : List.of("north", "south")) {
+			Reservation reservation = new Reservation();
+			reservation.setSiteId(site);
+			reservation.setArrivalDate(today.plusDays(4));
+			reservation.setDepartureDate(today.plusDays(7));
+			reservation.setCheckInDate(today.plusDays(5));
+			reservation.setCheckOutDate(today.plusDays(7));
+			reservation.setEmail(site + "@test.com");
+			reservation.setFullName("Site");
+			
+			ResponseEntity<Reservation> response = this.restTemplate.postForEntity(host + port + "/reservation", reservation, Reservation.class);
+			assertEquals(HttpStatus.CREATED, response.getStatusCode());
+			assertEquals(site, response.getBody().getSiteId());
+			created.add(response.getBody());
+		}
+		assertEquals(HttpStatus.BAD_REQUEST, this.restTemplate.postForEntity(host + port + "/reservation/batch", created, String.class).getStatusCode());
+		
+		String query = "?siteId=north&siteId=south&siteId=east&dateFrom=" + today.plusDays(4) + "&dateTo=" + today.plusDays(8);
+		LinkedHashMap<?, ?> bySite = this.restTemplate.getForObject(host + port + "/reservation/available/sites" + query, LinkedHashMap.class);
+		assertEquals(List.of("east", "north", "south"), new ArrayList<>(bySite.keySet()));
+		assertEquals(List.of(today.plusDays(4).toString(), today.plusDays(7).toString()), bySite.get("north"));
+		assertEquals(4, ((List<?>) bySite.get("east")).size());
+		
+		ReservationPage page = this.restTemplate.getForObject(host + port + "/reservation?siteId=south", ReservationPage.class);
+		assertEquals(List.of(created.get(1).getId()), page.getItems().stream().map(Reservation::getId).collect(Collectors.toList()));
+		
+		created.forEach(r -> this.restTemplate.delete(host + port + "/reservation/" + r.getId()));
+	}
+	
+	@Test
+	@Order(15)
+	public void metricsAreScrapedInPrometheusFormat() throws Exception {
+		this.restTemplate.getForEntity(host + port + "/reservation/" + UUID.randomUUID(), String.class);
+		
+		String scrape = this.restTemplate.getForObject(host + port + "/actuator/prometheus", String.class);
+		assertThat(scrape).contains("http_server_requests_seconds_bucket{");
+		assertThat(scrape).containsPattern("reservation_service_seconds_bucket\\{exception=\"none\",method=\"reserve\",phase=\"persist\"");
+		assertThat(scrape).containsPattern("reservation_service_seconds_count\\{exception=\"none\",method=\"reserve\",phase=\"conflict-check\"");
+		assertThat(scrape).containsPattern("reservation_repository_seconds_bucket\\{exception=\"none\",method=\"findById\",repository=\"ReservationRepository\"");
+		assertThat(scrape).contains("reservation_errors_total{exception=\"ReservationNotFoundException\",status=\"404\",}");
+		assertThat(scrape).contains("reservation_errors_total{exception=\"OverlappingDatesException\",status=\"409\",}");
+		assertThat(scrape).contains("hikaricp_connections_pending{");
+		assertThat(scrape).contains("hikaricp_connections_acquire_seconds_bucket{");
+		assertThat(scrape).contains("reservation_startup_time_to_ready_seconds ");
+		assertThat(scrape).contains("reservation_calendar_warm_up_seconds{source=\"");
+		assertThat(this.restTemplate.getForObject(host + port + "/actuator/health/readiness", String.class)).contains("\"UP\"");
+	}
+	
     @SneakyThrows(InterruptedException.class)
     private void threadSleep(int duration) {
         Thread.sleep(duration);
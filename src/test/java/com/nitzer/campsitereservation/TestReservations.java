@@ -0,0 +1,33 @@
+package com.nitzer.campsitereservation;
+
+import java.time.LocalDate;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+/*
+ * The reservations the tests book: the guest arrives the day before the first night and
+ * leaves on the check-out date.
+ */
+public final class TestReservations {
+
+	public static final String EMAIL = "camper@test.com";
+
+	private TestReservations() {
+	}
+
+	public static Reservation reservation(String siteId, LocalDate checkInDate, LocalDate checkOutDate) {
+		return reservation(siteId, EMAIL, checkInDate, checkOutDate);
+	}
+
+	public static Reservation reservation(String siteId, String email, LocalDate checkInDate, LocalDate checkOutDate) {
+		Reservation reservation = new Reservation();
+		reservation.setSiteId(siteId);
+		reservation.setEmail(email);
+		reservation.setFullName("Camper");
+		reservation.setArrivalDate(checkInDate.minusDays(1));
+		reservation.setDepartureDate(checkOutDate);
+		reservation.setCheckInDate(checkInDate);
+		reservation.setCheckOutDate(checkOutDate);
+		return reservation;
+	}
+}
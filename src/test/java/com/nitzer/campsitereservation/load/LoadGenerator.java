@@ -0,0 +1,305 @@
+package com.nitzer.campsitereservation.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nitzer.campsitereservation.entities.Reservation;
+
+/*
+ * Drives the API over HTTP with profile.clients concurrent clients. Each client only updates and
+ * cancels the reservations it made itself and remembers the last dates the server acknowledged,
+ * so after the run getHeld() is what the clients believe they hold.
+ */
+public class LoadGenerator {
+
+	public enum Operation {
+		READ(Set.of(200)),
+		RESERVE(Set.of(201, 409)),
+		UPDATE(Set.of(200, 409)),
+		CANCEL(Set.of(200));
+
+		/*
+		 * Outcomes of a healthy server. 503 is counted apart as load shed.
+		 */
+		private final Set<Integer> expected;
+
+		Operation(Set<Integer> expected) {
+			this.expected = expected;
+		}
+	}
+
+	private static final int SHED = 503;
+
+	private final String baseUrl;
+
+	private final ObjectMapper objectMapper;
+
+	private final LoadProfile profile;
+
+	private final HttpClient http = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(10))
+			.build();
+
+	private final LocalDate today = LocalDate.now();
+
+	// check-in has to be before a month from today
+	private final int horizon = (int) ChronoUnit.DAYS.between(today, today.plusMonths(1)) - 1;
+
+	private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+	private final Map<UUID, Reservation> held = new ConcurrentHashMap<>();
+
+	private long elapsedNanos;
+
+	public LoadGenerator(String baseUrl, ObjectMapper objectMapper, LoadProfile profile) {
+		this.baseUrl = baseUrl;
+		this.objectMapper = objectMapper;
+		this.profile = profile;
+		for (Operation operation : Operation.values()) {
+			this.stats.put(operation, new Stats());
+		}
+	}
+
+	public LoadGenerator run() throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(this.profile.getClients());
+		CountDownLatch opening = new CountDownLatch(1);
+		List<Future<?>> running = new ArrayList<>(this.profile.getClients());
+		for (int i = 0; i < this.profile.getClients(); i++) {
+			Random random = new Random(this.profile.getSeed() + i);
+			int client = i;
+			running.add(clients.submit(() -> {
+				opening.await();
+				runClient(client, random);
+				return null;
+			}));
+		}
+
+		long start = System.nanoTime();
+		opening.countDown();
+		try {
+			for (Future<?> client : running) {
+				client.get();
+			}
+		} finally {
+			this.elapsedNanos = System.nanoTime() - start;
+			clients.shutdownNow();
+		}
+		return this;
+	}
+
+	public Collection<Reservation> getHeld() {
+		return this.held.values();
+	}
+
+	public List<String> getSites() {
+		List<String> sites = new ArrayList<>(this.profile.getSites());
+		for (int i = 0; i < this.profile.getSites(); i++) {
+			sites.add("load-" + i);
+		}
+		return sites;
+	}
+
+	public LocalDate getLastNight() {
+		return this.today.plusDays(this.horizon + 3);
+	}
+
+	/*
+	 * Responses outside the expected outcomes of their operation, failed requests included.
+	 */
+	public long getUnexpected() {
+		return this.stats.entrySet().stream().mapToLong(e -> e.getValue().unexpected(e.getKey())).sum();
+	}
+
+	public long getShed() {
+		return this.stats.values().stream().mapToLong(s -> s.count(SHED)).sum();
+	}
+
+	public Duration getP99(Operation operation) {
+		return Duration.of(this.stats.get(operation).latencies.getValueAtPercentile(99), ChronoUnit.MICROS);
+	}
+
+	public String report() {
+		double seconds = this.elapsedNanos / 1e9;
+		StringBuilder report = new StringBuilder(String.format("%d clients x %d requests over %d sites in %.2f s%n",
+				this.profile.getClients(), this.profile.getRequestsPerClient(), this.profile.getSites(), seconds));
+		report.append(String.format("%-8s %9s %9s %9s %9s %9s %9s  %s%n", "", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "statuses"));
+		this.stats.forEach((operation, stats) -> {
+			Histogram latencies = stats.latencies;
+			report.append(String.format("%-8s %9d %9.1f %9.2f %9.2f %9.2f %9.2f  %s%n", operation, latencies.getTotalCount(),
+					latencies.getTotalCount() / seconds, latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(95) / 1e3,
+					latencies.getValueAtPercentile(99) / 1e3, latencies.getMaxValue() / 1e3, stats.statuses()));
+		});
+		report.append(String.format("%d reservations held at the end", this.held.size()));
+		return report.toString();
+	}
+
+	private void runClient(int client, Random random) throws IOException {
+		Map<UUID, Reservation> own = new HashMap<>();
+		List<String> sites = getSites();
+		for (int r = 0; r < this.profile.getRequestsPerClient(); r++) {
+			String site = sites.get(random.nextInt(sites.size()));
+			switch (nextOperation(random, own.isEmpty())) {
+			case READ:
+				send(Operation.READ, HttpRequest.newBuilder(uri("/reservation/available?siteId=" + site + "&dateFrom=" + this.today
+						+ "&dateTo=" + getLastNight())).GET());
+				break;
+			case RESERVE:
+				Reservation reservation = stay(random);
+				reservation.setSiteId(site);
+				reservation.setEmail("client" + client + "@load.test");
+				reservation.setFullName("Client " + client);
+				HttpResponse<String> created = send(Operation.RESERVE, HttpRequest.newBuilder(uri("/reservation")).POST(json(reservation)));
+				if (created != null && created.statusCode() == 201) {
+					Reservation made = this.objectMapper.readValue(created.body(), Reservation.class);
+					own.put(made.getId(), made);
+				}
+				break;
+			case UPDATE:
+				Reservation current = pick(own, random);
+				Reservation moved = stay(random);
+				moved.setSiteId(current.getSiteId());
+				moved.setEmail(current.getEmail());
+				moved.setFullName(current.getFullName());
+				HttpResponse<String> updated = send(Operation.UPDATE, HttpRequest.newBuilder(uri("/reservation/" + current.getId())).PUT(json(moved)));
+				if (updated != null && updated.statusCode() == 200) {
+					own.put(current.getId(), this.objectMapper.readValue(updated.body(), Reservation.class));
+				}
+				break;
+			case CANCEL:
+				Reservation cancelled = pick(own, random);
+				HttpResponse<String> deleted = send(Operation.CANCEL, HttpRequest.newBuilder(uri("/reservation/" + cancelled.getId())).DELETE());
+				if (deleted != null && deleted.statusCode() == 200) {
+					own.remove(cancelled.getId());
+				}
+				break;
+			}
+		}
+		this.held.putAll(own);
+	}
+
+	/*
+	 * Clients without a reservation of their own reserve instead of updating or cancelling.
+	 */
+	private Operation nextOperation(Random random, boolean nothingHeld) {
+		double read = this.profile.getReadWeight();
+		double reserve = read + this.profile.getReserveWeight();
+		double update = reserve + this.profile.getUpdateWeight();
+		double draw = random.nextDouble() * (update + this.profile.getCancelWeight());
+		if (draw < read) {
+			return Operation.READ;
+		}
+		if (draw < reserve || nothingHeld) {
+			return Operation.RESERVE;
+		}
+		return draw < update ? Operation.UPDATE : Operation.CANCEL;
+	}
+
+	private Reservation stay(Random random) {
+		int day = random.nextDouble() < this.profile.getHotShare()
+				? 1 + random.nextInt(Math.min(this.profile.getHotDays(), this.horizon))
+				: 1 + random.nextInt(this.horizon);
+		LocalDate checkIn = this.today.plusDays(day);
+		LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(3));
+
+		Reservation reservation = new Reservation();
+		reservation.setArrivalDate(checkIn.minusDays(1));
+		reservation.setCheckInDate(checkIn);
+		reservation.setCheckOutDate(checkOut);
+		reservation.setDepartureDate(checkOut);
+		return reservation;
+	}
+
+	private static Reservation pick(Map<UUID, Reservation> own, Random random) {
+		List<Reservation> reservations = new ArrayList<>(own.values());
+		return reservations.get(random.nextInt(reservations.size()));
+	}
+
+	private HttpResponse<String> send(Operation operation, HttpRequest.Builder request) {
+		Stats stats = this.stats.get(operation);
+		long start = System.nanoTime();
+		try {
+			HttpResponse<String> response = this.http.send(request.header("Content-Type", "application/json")
+					.timeout(Duration.ofMinutes(1)).build(), HttpResponse.BodyHandlers.ofString());
+			stats.record(response.statusCode(), System.nanoTime() - start);
+			return response;
+		} catch (IOException e) {
+			stats.failed.increment();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stats.failed.increment();
+			return null;
+		}
+	}
+
+	private HttpRequest.BodyPublisher json(Reservation reservation) throws IOException {
+		return HttpRequest.BodyPublishers.ofString(this.objectMapper.writeValueAsString(reservation));
+	}
+
+	private URI uri(String path) {
+		return URI.create(this.baseUrl + path);
+	}
+
+	private static class Stats {
+
+		private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(2), 3);
+
+		private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+		private final LongAdder failed = new LongAdder();
+
+		private void record(int status, long nanos) {
+			this.latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), this.latencies.getHighestTrackableValue()));
+			this.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+		}
+
+		private long count(int status) {
+			LongAdder count = this.statuses.get(status);
+			return count == null ? 0 : count.sum();
+		}
+
+		private long unexpected(Operation operation) {
+			return this.failed.sum() + this.statuses.entrySet().stream()
+					.filter(e -> !operation.expected.contains(e.getKey()) && e.getKey() != SHED)
+					.mapToLong(e -> e.getValue().sum())
+					.sum();
+		}
+
+		private String statuses() {
+			Map<Integer, Long> counts = new TreeMap<>();
+			this.statuses.forEach((status, count) -> counts.put(status, count.sum()));
+			if (this.failed.sum() > 0) {
+				return counts + " failed=" + this.failed.sum();
+			}
+			return counts.toString();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.nitzer.campsitereservation.load;
+
+import java.time.Duration;
+
+import lombok.Builder;
+import lombok.Value;
+
+/*
+ * Shape of a load run. Every client sends its requests one after the other, all clients start
+ * at the same instant. Check-in dates are skewed towards the first hotDays of the bookable
+ * window, the way a season opening concentrates demand on its first days.
+ */
+@Value
+@Builder
+public class LoadProfile {
+
+	@Builder.Default
+	int clients = 100;
+
+	@Builder.Default
+	int requestsPerClient = 10;
+
+	@Builder.Default
+	int sites = 2;
+
+	/*
+	 * Share of availability reads, reservations, updates and cancellations. They do not need to add up to 1.
+	 */
+	@Builder.Default
+	double readWeight = 0.6;
+
+	@Builder.Default
+	double reserveWeight = 0.25;
+
+	@Builder.Default
+	double updateWeight = 0.1;
+
+	@Builder.Default
+	double cancelWeight = 0.05;
+
+	@Builder.Default
+	int hotDays = 5;
+
+	@Builder.Default
+	double hotShare = 0.8;
+
+	/*
+	 * Regression budget for the p99 latency of every operation, generous enough for a shared CI box.
+	 */
+	@Builder.Default
+	Duration maxP99 = Duration.ofSeconds(10);
+
+	@Builder.Default
+	long seed = 42;
+
+	/*
+	 * Defaults overridden by the load.* system properties, e.g. -Dload.clients=2000 -Dload.requests=50.
+	 */
+	public static LoadProfile fromSystemProperties() {
+		LoadProfile defaults = LoadProfile.builder().build();
+		return LoadProfile.builder()
+				.clients(Integer.getInteger("load.clients", defaults.clients))
+				.requestsPerClient(Integer.getInteger("load.requests", defaults.requestsPerClient))
+				.sites(Integer.getInteger("load.sites", defaults.sites))
+				.readWeight(doubleProperty("load.read-weight", defaults.readWeight))
+				.reserveWeight(doubleProperty("load.reserve-weight", defaults.reserveWeight))
+				.updateWeight(doubleProperty("load.update-weight", defaults.updateWeight))
+				.cancelWeight(doubleProperty("load.cancel-weight", defaults.cancelWeight))
+				.hotDays(Integer.getInteger("load.hot-days", defaults.hotDays))
+				.hotShare(doubleProperty("load.hot-share", defaults.hotShare))
+				.maxP99(Duration.parse(System.getProperty("load.max-p99", defaults.maxP99.toString())))
+				.seed(Long.getLong("load.seed", defaults.seed))
+				.build();
+	}
+
+	private static double doubleProperty(String name, double defaultValue) {
+		String value = System.getProperty(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+}
@@ -0,0 +1,91 @@
+package com.nitzer.campsitereservation.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+import com.nitzer.campsitereservation.services.OccupancyCalendar;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Mixed read, reserve, update and cancel load against the embedded server, followed by checks
+ * that nothing inconsistent was committed. Runs a small profile by default, scale it with the
+ * load.* system properties described in LoadProfile:
+ * mvn test -Dtest=ReservationLoadTests -Dload.clients=2000 -Dload.requests=50
+ * The server runs in async execution mode, the other application tests cover the blocking one.
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = { "spring.datasource.url=jdbc:h2:mem:load", "reservation.execution-mode=async" })
+class ReservationLoadTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private OccupancyCalendar calendar;
+
+	@Test
+	public void mixedLoadNeverCommitsADoubleBooking() throws Exception {
+		LoadProfile profile = LoadProfile.fromSystemProperties();
+		LoadGenerator load = new LoadGenerator("http://localhost:" + this.port, this.objectMapper, profile).run();
+		log.info("Load test report:\n{}", load.report());
+
+		assertEquals(0, load.getUnexpected(), "requests with an unexpected outcome");
+		for (LoadGenerator.Operation operation : LoadGenerator.Operation.values()) {
+			assertTrue(load.getP99(operation).compareTo(profile.getMaxP99()) <= 0, operation + " p99 over budget: " + load.getP99(operation));
+		}
+
+		assertEquals(0, this.jdbcTemplate.queryForObject("select count(*) from bookings a join bookings b on a.site_id = b.site_id and a.id < b.id "
+				+ "and a.check_in_date <= b.check_out_date and b.check_in_date <= a.check_out_date and a.status = 'ACTIVE' and b.status = 'ACTIVE'", Long.class), "overlapping reservations");
+		assertEquals(this.jdbcTemplate.queryForObject("select coalesce(sum(datediff('DAY', check_in_date, check_out_date) + 1), 0) from bookings where status = 'ACTIVE'", Long.class),
+				this.jdbcTemplate.queryForObject("select count(*) from booked_dates", Long.class), "claimed days without their reservation");
+
+		// what the clients were told is what was committed
+		Map<Object, Reservation> stored = this.repository.findAll().stream().collect(Collectors.toMap(Reservation::getId, Function.identity()));
+		assertEquals(load.getHeld().size(), stored.size());
+		for (Reservation held : load.getHeld()) {
+			Reservation reservation = stored.get(held.getId());
+			assertEquals(held.getCheckInDate(), reservation.getCheckInDate());
+			assertEquals(held.getCheckOutDate(), reservation.getCheckOutDate());
+		}
+
+		// and what the calendar serves
+		LocalDate today = LocalDate.now();
+		for (String site : load.getSites()) {
+			List<LocalDate> free = new ArrayList<>();
+			for (LocalDate night = today; night.isBefore(load.getLastNight()); night = night.plusDays(1)) {
+				LocalDate n = night;
+				if (stored.values().stream().noneMatch(r -> r.getSiteId().equals(site) && !n.isBefore(r.getCheckInDate()) && n.isBefore(r.getCheckOutDate()))) {
+					free.add(night);
+				}
+			}
+			assertEquals(free, this.calendar.getFreeNights(site, today, load.getLastNight()), "free nights of " + site);
+		}
+	}
+}
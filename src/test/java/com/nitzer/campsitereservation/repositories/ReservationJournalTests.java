@@ -0,0 +1,195 @@
+package com.nitzer.campsitereservation.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageRequest;
+
+import com.nitzer.campsitereservation.TestReservations;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReservationJournalTests {
+
+	private static final String SITE = Reservation.DEFAULT_SITE;
+
+	private final LocalDate today = LocalDate.now();
+
+	@TempDir
+	Path directory;
+
+	private ReservationJournal journal;
+
+	@BeforeEach
+	public void open() throws Exception {
+		this.journal = reopen();
+	}
+
+	@AfterEach
+	public void close() throws Exception {
+		this.journal.close();
+	}
+
+	@Test
+	public void changesSurviveAReplay() throws Exception {
+		List<String> changes = new ArrayList<>();
+		this.journal.addListener((before, after) -> changes.add((before == null ? "-" : before.getCheckInDate().toString())
+				+ ">" + (after == null ? "-" : after.getCheckInDate().toString())));
+
+		Reservation kept = this.journal.reserve(reservation(SITE, 2, 4));
+		Reservation cancelled = this.journal.reserve(reservation("lake", 2, 4));
+		this.journal.update(reservation(SITE, 6, 8), kept.getId());
+		this.journal.cancel(cancelled.getId());
+		assertEquals(List.of("->" + day(2), "->" + day(2), day(2) + ">" + day(6), day(2) + ">-"), changes);
+
+		this.journal.close();
+		this.journal = reopen();
+		List<Reservation> replayed = this.journal.findAll();
+		assertEquals(1, replayed.size());
+		Reservation reservation = replayed.get(0);
+		assertEquals(kept.getId(), reservation.getId());
+		assertEquals(SITE, reservation.getSiteId());
+		assertEquals(TestReservations.EMAIL, reservation.getEmail());
+		assertEquals(day(5), reservation.getArrivalDate());
+		assertEquals(day(6), reservation.getCheckInDate());
+		assertEquals(day(8), reservation.getCheckOutDate());
+		assertEquals(List.of(day(6), day(7), day(8)), this.journal.findClaimedDays(SITE, day(0), day(30)));
+		assertTrue(this.journal.findById(cancelled.getId()).isEmpty());
+	}
+
+	@Test
+	public void nullsAreReplayedAsNulls() throws Exception {
+		Reservation anonymous = reservation(SITE, 2, 4);
+		anonymous.setFullName(null);
+		Reservation blank = reservation("lake", 2, 4);
+		blank.setFullName("");
+		this.journal.reserveAll(List.of(anonymous, blank));
+
+		this.journal.close();
+		this.journal = reopen();
+		assertNull(this.journal.findById(anonymous.getId()).get().getFullName());
+		assertEquals("", this.journal.findById(blank.getId()).get().getFullName());
+	}
+
+	@Test
+	public void aClosedJournalRefusesWrites() throws Exception {
+		Reservation kept = this.journal.reserve(reservation(SITE, 2, 4));
+
+		this.journal.close();
+		assertThrows(IllegalStateException.class, () -> this.journal.reserve(reservation(SITE, 6, 8)));
+		this.journal = reopen();
+		assertEquals(List.of(kept.getId()), this.journal.findAll().stream().map(Reservation::getId).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void overlapsAreRejectedOnTheSameSiteOnly() {
+		Reservation reservation = this.journal.reserve(reservation(SITE, 5, 7));
+
+		// check-out day is claimed too, as in the booked_dates table
+		assertThrows(OverlappingDatesException.class, () -> this.journal.reserve(reservation(SITE, 7, 9)));
+		assertThrows(OverlappingDatesException.class, () -> this.journal.reserveAll(List.of(reservation(SITE, 10, 11), reservation(SITE, 3, 5))));
+		assertEquals(1, this.journal.findAll().size());
+
+		this.journal.reserve(reservation("lake", 5, 7));
+		this.journal.update(reservation(SITE, 6, 8), reservation.getId());
+		assertThrows(ReservationNotFoundException.class, () -> this.journal.cancel(UUID.randomUUID()));
+	}
+
+	@Test
+	public void aBatchLargerThanTheFileIsWrittenWhole() throws Exception {
+		List<Reservation> batch = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			batch.add(reservation(SITE, 2 + 3 * i, 3 + 3 * i));
+		}
+		// the file starts at 256 bytes, it is grown once for the ten records
+		this.journal.reserveAll(batch);
+		assertTrue(batch.stream().allMatch(r -> r.getId() != null));
+
+		this.journal.close();
+		this.journal = reopen();
+		assertEquals(batch.stream().map(Reservation::getId).collect(Collectors.toList()),
+				this.journal.findAll().stream().map(Reservation::getId).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void pagesFollowCheckInAndId() {
+		for (int i = 0; i < 5; i++) {
+			this.journal.reserve(reservation(SITE, 2 + 3 * i, 3 + 3 * i));
+			this.journal.reserve(reservation("lake", 2 + 3 * i, 3 + 3 * i));
+		}
+
+		List<Reservation> first = this.journal.findPage(day(0), day(30), null, PageRequest.of(0, 4));
+		assertEquals(List.of(day(2), day(2), day(5), day(5)), first.stream().map(Reservation::getCheckInDate).collect(Collectors.toList()));
+		Reservation last = first.get(3);
+		List<Reservation> next = this.journal.findPageAfter(last.getCheckInDate(), last.getId(), day(30), null, PageRequest.of(0, 10));
+		assertEquals(6, next.size());
+		assertEquals(day(8), next.get(0).getCheckInDate());
+
+		List<Reservation> lake = this.journal.findSitePage("lake", day(5), day(11), null, PageRequest.of(0, 10));
+		assertEquals(List.of(day(5), day(8)), lake.stream().map(Reservation::getCheckInDate).collect(Collectors.toList()));
+		assertTrue(lake.stream().allMatch(r -> r.getSiteId().equals("lake")));
+	}
+
+	@Test
+	public void aTornTailIsNotReplayed() throws Exception {
+		this.journal.reserve(reservation(SITE, 2, 3));
+		this.journal.reserve(reservation(SITE, 5, 6));
+		this.journal.close();
+
+		// the last record loses its last byte, as if the process had died while writing it
+		Path file = this.directory.resolve("reservations.journal");
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			long end = 8;
+			while (true) {
+				raf.seek(end);
+				int length = raf.readInt();
+				if (length == 0) {
+					break;
+				}
+				end += 8 + length;
+			}
+			raf.seek(end - 1);
+			int last = raf.read();
+			raf.seek(end - 1);
+			raf.write(last ^ 0xff);
+		}
+
+		this.journal = reopen();
+		assertEquals(List.of(day(2)), this.journal.findAll().stream().map(Reservation::getCheckInDate).collect(Collectors.toList()));
+		this.journal.reserve(reservation(SITE, 8, 9));
+		this.journal.close();
+		this.journal = reopen();
+		assertEquals(List.of(day(2), day(8)), this.journal.findAll().stream().map(Reservation::getCheckInDate).collect(Collectors.toList()));
+	}
+
+	private ReservationJournal reopen() throws Exception {
+		ReservationJournal journal = new ReservationJournal(new SimpleMeterRegistry(), this.directory.resolve("reservations.journal").toString(), true, 200, 256);
+		journal.open();
+		return journal;
+	}
+
+	private LocalDate day(int days) {
+		return this.today.plusDays(days);
+	}
+
+	private Reservation reservation(String siteId, int checkIn, int checkOut) {
+		return TestReservations.reservation(siteId, day(checkIn), day(checkOut));
+	}
+}
@@ -0,0 +1,125 @@
+package com.nitzer.campsitereservation.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Runs against the schema created by the Flyway migrations and checks that H2 answers the
+ * overlap and keyset pagination predicates from the indexes instead of scanning bookings.
+ */
+@Slf4j
+@DataJpaTest(properties = "spring.jpa.properties.javax.persistence.validation.mode=none")
+class ReservationRepositoryTests {
+
+	private static final String OVERLAP_PREDICATE = "b.site_id = ? and ? <= b.check_out_date and ? >= b.check_in_date and b.status = 'ACTIVE'";
+
+	private static final String SITE = Reservation.DEFAULT_SITE;
+
+	private LocalDate today = LocalDate.now();
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void seedHistory() {
+		this.repository.saveAll(IntStream.range(1, 2000)
+				.mapToObj(i -> reservation(SITE, "history@test.com", today.minusDays(3L * i), today.minusDays(3L * i - 1)))
+				.collect(Collectors.toList()));
+		this.repository.save(reservation(SITE, "history@test.com", today.plusDays(2), today.plusDays(4)));
+		this.repository.flush();
+	}
+
+	@Test
+	public void overlapQueriesUseDateRangeIndex() {
+		String countPlan = explain("select count(b.id) > 0 from bookings b where " + OVERLAP_PREDICATE + " and (? is null or b.id <> ?)",
+				SITE, today, today.plusMonths(1), null, null);
+		String selectPlan = explain("select b.* from bookings b where " + OVERLAP_PREDICATE, SITE, today, today.plusMonths(1));
+
+		assertThat(countPlan).containsIgnoringCase("idx_bookings_site_check_out_in: status = 'ACTIVE'");
+		assertThat(countPlan).containsIgnoringCase("and check_in_date <= ?3");
+		assertThat(countPlan).containsIgnoringCase("and site_id = ?1");
+		assertThat(countPlan).containsIgnoringCase("and check_out_date >= ?2");
+		assertThat(selectPlan).containsIgnoringCase("idx_bookings_site_check_out_in: status = 'ACTIVE'");
+		assertThat(countPlan).doesNotContain("tableScan");
+		assertThat(selectPlan).doesNotContain("tableScan");
+	}
+
+	@Test
+	public void overlapQueriesStillMatchClosedIntervals() {
+		assertTrue(this.repository.existsOverlappingReservation(SITE, today.plusDays(4), today.plusDays(5), null));
+		assertFalse(this.repository.existsOverlappingReservation(SITE, today.plusDays(5), today.plusDays(6), null));
+		assertFalse(this.repository.existsOverlappingReservation("lake", today.plusDays(4), today.plusDays(5), null));
+		assertThat(this.repository.findByDateInterval(SITE, today, today.plusMonths(1))).hasSize(1);
+		assertThat(this.repository.findByDateInterval("lake", today, today.plusMonths(1))).isEmpty();
+	}
+
+	@Test
+	public void keysetPagesWalkEveryReservationOnce() {
+		LocalDate first = LocalDate.of(1, 1, 1);
+		LocalDate last = LocalDate.of(9999, 12, 31);
+		List<Reservation> seen = new ArrayList<>();
+		List<Reservation> page = this.repository.findPage(first, last, null, PageRequest.of(0, 300));
+		while (!page.isEmpty()) {
+			seen.addAll(page);
+			Reservation tail = page.get(page.size() - 1);
+			page = this.repository.findPageAfter(tail.getCheckInDate(), tail.getId(), last, null, PageRequest.of(0, 300));
+		}
+
+		assertThat(seen).hasSize(2000);
+		assertThat(seen.stream().map(Reservation::getId).distinct().count()).isEqualTo(2000);
+		assertThat(seen).extracting(Reservation::getCheckInDate).isSorted();
+		assertThat(this.repository.findPage(today, last, "history@test.com", PageRequest.of(0, 10))).hasSize(1);
+		assertThat(this.repository.findSitePage(SITE, today, last, null, PageRequest.of(0, 10))).hasSize(1);
+		assertThat(this.repository.findSitePage("lake", first, last, null, PageRequest.of(0, 10))).isEmpty();
+		assertThat(this.repository.findPage(first, last, "nobody@test.com", PageRequest.of(0, 10))).isEmpty();
+
+		String plan = explain("select b.* from bookings b where b.check_in_date >= ? and (b.check_in_date > ? or b.id > ?) and b.check_in_date < ? "
+				+ "order by b.check_in_date, b.id limit 300", today, today, new byte[16], last);
+		assertThat(plan).containsIgnoringCase("idx_bookings_check_in_id: check_in_date < ?4");
+		assertThat(plan).containsIgnoringCase("index sorted");
+		assertThat(plan).doesNotContain("tableScan");
+
+		String sitePlan = explain("select b.* from bookings b where b.check_in_date >= ? and (b.check_in_date > ? or b.id > ?) and b.check_in_date < ? "
+				+ "and b.site_id = ? order by b.site_id, b.check_in_date, b.id limit 300", today, today, new byte[16], last, SITE);
+		assertThat(sitePlan).containsIgnoringCase("idx_bookings_site_check_in_id: site_id = ?5");
+		assertThat(sitePlan).containsIgnoringCase("index sorted");
+	}
+
+	@Test
+	public void emailLookupsUseTheNormalizedEmailIndex() {
+		assertThat(this.repository.findByEmail("history@test.com", PageRequest.of(0, 10))).hasSize(10);
+		assertThat(this.repository.findByEmail("History@Test.com", PageRequest.of(0, 10))).isEmpty();
+
+		String plan = explain("select b.* from bookings b where b.email_normalized = ? order by b.check_in_date, b.id limit 10", "history@test.com");
+		assertThat(plan).containsIgnoringCase("idx_bookings_email_check_in_id: email_normalized = ?1");
+		assertThat(plan).doesNotContain("tableScan");
+	}
+
+	private String explain(String sql, Object... args) {
+		String plan = this.jdbcTemplate.queryForObject("explain " + sql, String.class, args);
+		log.info("Plan for {}: {}", sql, plan);
+		return plan;
+	}
+}
@@ -0,0 +1,133 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilityCacheTests {
+
+	private static final String SITE = Reservation.DEFAULT_SITE;
+
+	private LocalDate today = LocalDate.now();
+
+	@Mock
+	private ReservationRepository repository;
+
+	@Mock
+	private HoldRepository holdRepository;
+
+	@InjectMocks
+	private OccupancyCalendar calendar;
+
+	private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private AvailabilityCache cache;
+
+	@BeforeEach
+	public void setUp() {
+		Mockito.when(this.repository.findAll()).thenReturn(List.of());
+		this.calendar.load();
+		// a night long gone, only the sites known to the calendar are cached
+		this.calendar.book(SITE, today.minusYears(1), today.minusYears(1).plusDays(1));
+		this.cache = new AvailabilityCache(this.calendar, this.registry, 1000);
+	}
+
+	@Test
+	public void servesRepeatedRangesFromCache() {
+		List<LocalDate> first = this.cache.get(SITE, today, today.plusMonths(1));
+
+		assertSame(first, this.cache.get(SITE, today, today.plusMonths(1)));
+		assertEquals(1.0, this.registry.get("cache.gets").tag("cache", "availability").tag("result", "hit").functionCounter().count());
+	}
+
+	@Test
+	public void evictsOnlyRangesTouchedByACommittedChange() {
+		List<LocalDate> month = this.cache.get(SITE, today, today.plusMonths(1));
+		List<LocalDate> nextYear = this.cache.get(SITE, today.plusYears(1), today.plusYears(1).plusMonths(1));
+
+		this.calendar.book(SITE, today.plusDays(3), today.plusDays(5));
+
+		List<LocalDate> refreshed = this.cache.get(SITE, today, today.plusMonths(1));
+		assertFalse(refreshed.contains(today.plusDays(3)));
+		assertEquals(month.size() - 2, refreshed.size());
+		assertSame(nextYear, this.cache.get(SITE, today.plusYears(1), today.plusYears(1).plusMonths(1)));
+	}
+
+	@Test
+	public void changesOnASiteDoNotEvictAnotherSite() {
+		List<LocalDate> site = this.cache.get(SITE, today, today.plusMonths(1));
+		List<LocalDate> lake = this.cache.get("lake", today, today.plusMonths(1));
+
+		this.calendar.book("lake", today.plusDays(3), today.plusDays(5));
+
+		assertSame(site, this.cache.get(SITE, today, today.plusMonths(1)));
+		assertEquals(lake.size() - 2, this.cache.get("lake", today, today.plusMonths(1)).size());
+	}
+
+	@Test
+	public void isBoundedByTheDatesItHolds() {
+		AvailabilityCache small = new AvailabilityCache(this.calendar, new SimpleMeterRegistry(), 400);
+		for (int i = 0; i < 10; i++) {
+			small.get(SITE, today.plusYears(i), today.plusYears(i).plusMonths(3));
+		}
+
+		assertTrue(small.weightedSize() <= 400);
+	}
+
+	@Test
+	public void unknownSitesAreNotCached() {
+		List<LocalDate> nowhere = this.cache.get("nowhere", today, today.plusMonths(1));
+
+		assertEquals(today.datesUntil(today.plusMonths(1)).count(), nowhere.size());
+		assertNotSame(nowhere, this.cache.get("nowhere", today, today.plusMonths(1)));
+		assertEquals(0.0, this.registry.get("cache.size").tag("cache", "availability").gauge().value());
+	}
+
+	@Test
+	public void coalescesConcurrentIdenticalMisses() throws Exception {
+		OccupancyCalendar slowCalendar = Mockito.mock(OccupancyCalendar.class);
+		AvailabilityCache coalescing = new AvailabilityCache(slowCalendar, this.registry, 1000);
+		CountDownLatch computing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Mockito.when(slowCalendar.hasSite(SITE)).thenReturn(true);
+		Mockito.when(slowCalendar.getFreeNights(SITE, today, today.plusMonths(1))).thenAnswer(invocation -> {
+			computing.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return List.of(today);
+		});
+
+		CompletableFuture<List<LocalDate>> leader = CompletableFuture.supplyAsync(() -> coalescing.get(SITE, today, today.plusMonths(1)));
+		computing.await(5, TimeUnit.SECONDS);
+		CompletableFuture<List<LocalDate>> follower = CompletableFuture.supplyAsync(() -> coalescing.get(SITE, today, today.plusMonths(1)));
+		while (this.registry.get("reservation.availability.coalesced").counter().count() < 1) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+
+		assertSame(leader.get(), follower.get());
+		Mockito.verify(slowCalendar, Mockito.times(1)).getFreeNights(SITE, today, today.plusMonths(1));
+	}
+}
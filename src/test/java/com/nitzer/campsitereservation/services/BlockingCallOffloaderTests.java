@@ -0,0 +1,79 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+import com.nitzer.campsitereservation.exceptions.ReservationQueueFullException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+
+class BlockingCallOffloaderTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	public void blockingModeRunsOnTheCallerThread() throws Exception {
+		BlockingCallOffloader offloader = new BlockingCallOffloader(this.registry, "blocking", 2, 2);
+
+		CompletableFuture<Thread> thread = offloader.supply(Thread::currentThread);
+		assertTrue(thread.isDone());
+		assertEquals(Thread.currentThread(), thread.get());
+
+		CompletableFuture<Object> failed = offloader.supply(() -> {
+			throw new IllegalStateException();
+		});
+		assertTrue(failed.isCompletedExceptionally());
+	}
+
+	@Test
+	public void asyncModeBoundsConcurrencyAndShedsOverTheQueue() throws Exception {
+		BlockingCallOffloader offloader = new BlockingCallOffloader(this.registry, "async", 2, 2);
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			// two running and two queued, the fifth does not fit
+			List<CompletableFuture<Thread>> accepted = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				accepted.add(offloader.supply(() -> {
+					started.countDown();
+					await(release);
+					return Thread.currentThread();
+				}));
+			}
+			started.await();
+			ExecutionException shed = assertThrows(ExecutionException.class, () -> offloader.supply(Thread::currentThread).get());
+			assertTrue(shed.getCause() instanceof ReservationQueueFullException);
+			assertEquals(2, this.registry.get("executor.active").tag("name", "reservation.async").gauge().value());
+
+			release.countDown();
+			for (CompletableFuture<Thread> call : accepted) {
+				assertFalse(call.get() == Thread.currentThread());
+				assertTrue(call.get().getName().startsWith("reservation-async-"));
+			}
+		} finally {
+			release.countDown();
+			offloader.stop();
+		}
+	}
+
+	@Test
+	public void unknownModeIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new BlockingCallOffloader(this.registry, "reactive", 2, 2));
+	}
+
+	@SneakyThrows
+	private static void await(CountDownLatch latch) {
+		latch.await();
+	}
+}
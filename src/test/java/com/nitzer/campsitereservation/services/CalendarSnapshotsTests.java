@@ -0,0 +1,127 @@
+package com.nitzer.campsitereservation.services;
+
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nitzer.campsitereservation.entities.CalendarCheckpoint;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.CalendarChangeRepository;
+import com.nitzer.campsitereservation.repositories.CalendarCheckpointRepository;
+
+import lombok.SneakyThrows;
+
+@SharedServiceContext
+class CalendarSnapshotsTests {
+
+	private static final String SITE = "snapshots";
+
+	private LocalDate start = LocalDate.now().plusDays(20);
+
+	@Autowired
+	private CalendarSnapshots snapshots;
+
+	@Autowired
+	private ReservationService service;
+
+	@Autowired
+	private OccupancyCalendar calendar;
+
+	@Autowired
+	private CalendarChangeRepository changeRepository;
+
+	@Autowired
+	private CalendarCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private TransactionTemplate transactions;
+
+	@Value("${reservation.snapshot.path}")
+	private String path;
+
+	@Test
+	public void restartsFromTheSnapshotAndTheChangesAfterIt() throws Exception {
+		Reservation cancelled = this.service.reserve(reservation("lake", start, start.plusDays(2)));
+		Reservation moved = this.service.reserve(reservation(SITE, start, start.plusDays(3)));
+		this.snapshots.write();
+		assertEquals(0, this.changeRepository.count());
+
+		// after the snapshot: one cancel, one move and one new reservation on a site the snapshot does not have
+		this.service.cancel(cancelled.getId());
+		this.service.update(reservation(SITE, start.plusDays(5), start.plusDays(7)), moved.getId());
+		this.service.reserve(reservation("forest", start, start.plusDays(1)));
+		assertEquals(3, this.changeRepository.count());
+		Map<String, BitSet> current = this.calendar.copyNights();
+
+		this.calendar.restore(Map.of());
+		assertEquals("snapshot", this.snapshots.load());
+		assertEquals(current, this.calendar.copyNights());
+		assertFalse(this.calendar.isOccupied("lake", start));
+		assertFalse(this.calendar.isOccupied(SITE, start));
+		assertTrue(this.calendar.isOccupied(SITE, start.plusDays(5)));
+		assertTrue(this.calendar.isOccupied("forest", start));
+	}
+
+	@Test
+	public void aSnapshotStopsBeforeAChangeNotAppliedYet() throws Exception {
+		CountDownLatch inserted = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread writer = new Thread(() -> this.transactions.executeWithoutResult(status -> {
+			this.snapshots.record("meadow", start, start.plusDays(1), () -> this.calendar.book("meadow", start, start.plusDays(1)));
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					inserted.countDown();
+					await(release);
+				}
+			});
+		}));
+		writer.start();
+		assertTrue(inserted.await(5, TimeUnit.SECONDS));
+
+		// the change has its seq but is not committed, the snapshot does not wait for it
+		this.snapshots.write();
+		release.countDown();
+		writer.join();
+
+		assertTrue(this.calendar.isOccupied("meadow", start));
+		assertTrue(this.checkpointRepository.findById(CalendarCheckpoint.ID).get().getWatermark() < this.changeRepository.findLastSeq());
+	}
+
+	@Test
+	public void aDamagedSnapshotFallsBackToTheRepository() throws Exception {
+		this.service.reserve(reservation("river", start.plusDays(5), start.plusDays(7)));
+		this.snapshots.write();
+		try (RandomAccessFile raf = new RandomAccessFile(this.path, "rw")) {
+			raf.seek(20);
+			int b = raf.read();
+			raf.seek(20);
+			raf.write(b ^ 0xff);
+		}
+		Map<String, BitSet> current = this.calendar.copyNights();
+
+		this.calendar.restore(Map.of());
+		assertEquals("repository", this.snapshots.load());
+		assertEquals(current, this.calendar.copyNights());
+	}
+
+	@SneakyThrows(InterruptedException.class)
+	private static void await(CountDownLatch latch) {
+		latch.await(5, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,77 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+
+class DateLockManagerTests {
+
+	private final LocalDate monday = LocalDate.of(2030, 1, 7);
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final DateLockManager lockManager = new DateLockManager(registry);
+
+	@Test
+	public void disjointWeeksAndSitesDoNotContend() throws Exception {
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> this.lockManager.withLocks("lake", monday, monday.plusDays(3), () -> {
+			held.countDown();
+			await(release);
+			return null;
+		}));
+		holder.start();
+		held.await();
+
+		this.lockManager.withLocks("lake", monday.plusWeeks(1), monday.plusWeeks(1).plusDays(3), () -> null);
+		this.lockManager.withLocks("forest", monday, monday.plusDays(3), () -> null);
+		assertNull(this.registry.find("reservation.lock.contention").counter());
+
+		release.countDown();
+		holder.join();
+	}
+
+	@Test
+	public void sameWeekIsCountedAsContention() throws Exception {
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> this.lockManager.withLocks("lake", monday.plusDays(1), monday.plusDays(2), () -> {
+			held.countDown();
+			await(release);
+			return null;
+		}));
+		holder.start();
+		held.await();
+
+		Thread waiter = new Thread(() -> this.lockManager.withLocks("lake", monday.minusDays(1), monday.plusDays(1), () -> null));
+		waiter.start();
+		while (this.registry.find("reservation.lock.contention").counter() == null) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		holder.join();
+		waiter.join();
+
+		assertEquals(1.0, this.registry.get("reservation.lock.contention").tag("site", "lake")
+				.tag("stripe", Integer.toString(DateLockManager.stripeOf(monday))).counter().count());
+		assertTrue(this.registry.get("reservation.lock.wait").timer().count() >= 3);
+		// the stripe is shared with other weeks, the tally names the week that was waited on
+		assertEquals(Map.of(new DateLockManager.HotWeek("lake", monday), 1L), this.lockManager.hottestWeeks(5));
+	}
+
+	@SneakyThrows(InterruptedException.class)
+	private static void await(CountDownLatch latch) {
+		latch.await(5, TimeUnit.SECONDS);
+	}
+}
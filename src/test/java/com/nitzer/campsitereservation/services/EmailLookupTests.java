@@ -0,0 +1,54 @@
+package com.nitzer.campsitereservation.services;
+
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@SharedServiceContext
+class EmailLookupTests {
+
+	private static final String SITE = "email";
+
+	private LocalDate start = LocalDate.now().plusDays(10);
+
+	@Autowired
+	private ReservationService service;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Test
+	public void lookupsIgnoreCaseAndFollowTheWrites() {
+		Reservation later = this.service.reserve(reservation(SITE, "Guest@Mail.com", start.plusDays(5), start.plusDays(6)));
+		Reservation first = this.service.reserve(reservation(SITE, "guest@mail.com", start, start.plusDays(1)));
+		this.service.reserve(reservation(SITE, "other@mail.com", start.plusDays(2), start.plusDays(3)));
+
+		assertEquals(List.of(first, later), this.service.getByEmail(" GUEST@mail.com "));
+		// the listing filtered by email matches the same reservations
+		assertEquals(List.of(first, later), this.service.getPage(null, start, start.plusDays(30), "GUEST@MAIL.COM", null, 10).getItems());
+		double hits = hits();
+		assertEquals(List.of(first, later), this.service.getByEmail("guest@mail.com"));
+		assertEquals(hits + 1, hits());
+
+		// every write of the email evicts it
+		Reservation moved = this.service.update(reservation(SITE, "guest@mail.com", start.plusDays(8), start.plusDays(9)), first.getId());
+		assertEquals(List.of(later, moved), this.service.getByEmail("guest@mail.com"));
+		this.service.cancel(later.getId());
+		assertEquals(List.of(moved), this.service.getByEmail("guest@mail.com"));
+		assertTrue(this.service.getByEmail("nobody@mail.com").isEmpty());
+	}
+
+	private double hits() {
+		return this.registry.get("cache.gets").tag("cache", "email-lookup").tag("result", "hit").functionCounter().count();
+	}
+}
@@ -0,0 +1,72 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ExpiryWheelTests {
+
+	private Map<UUID, Long> expiredAt = new ConcurrentHashMap<>();
+
+	private ExpiryWheel wheel;
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		this.wheel.stop();
+	}
+
+	@Test
+	public void expiresDeadlinesSeveralTurnsAheadAndSkipsCancelled() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(150);
+		this.wheel = new ExpiryWheel("test-wheel", 10, 8, id -> {
+			this.expiredAt.put(id, System.currentTimeMillis());
+			done.countDown();
+		});
+		this.wheel.start();
+
+		Instant now = Instant.now();
+		Map<UUID, Instant> deadlines = IntStream.range(0, 200).boxed()
+				.collect(Collectors.toMap(i -> UUID.randomUUID(), i -> now.plusMillis(200 + 5L * i)));
+		deadlines.forEach(this.wheel::schedule);
+		List<UUID> cancelled = deadlines.keySet().stream().limit(50).collect(Collectors.toList());
+		cancelled.forEach(this.wheel::cancel);
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		assertEquals(150, this.expiredAt.size());
+		assertEquals(0, this.wheel.size());
+		cancelled.forEach(id -> assertFalse(this.expiredAt.containsKey(id)));
+		this.expiredAt.forEach((id, at) -> assertTrue(at >= deadlines.get(id).toEpochMilli()));
+	}
+
+	@Test
+	public void rescheduleReplacesTheEarlierDeadline() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		this.wheel = new ExpiryWheel("test-wheel", 10, 8, id -> {
+			this.expiredAt.put(id, System.currentTimeMillis());
+			done.countDown();
+		});
+		this.wheel.start();
+
+		UUID id = UUID.randomUUID();
+		Instant later = Instant.now().plusMillis(300);
+		this.wheel.schedule(id, Instant.now().plusMillis(20));
+		this.wheel.schedule(id, later);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(this.expiredAt.get(id) >= later.toEpochMilli());
+	}
+}
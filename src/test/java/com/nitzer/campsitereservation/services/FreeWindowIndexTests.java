@@ -0,0 +1,115 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.nitzer.campsitereservation.dto.DateRange;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+@ExtendWith(MockitoExtension.class)
+class FreeWindowIndexTests {
+
+	private static final String SITE = Reservation.DEFAULT_SITE;
+
+	private LocalDate today = LocalDate.now();
+
+	@Mock
+	private ReservationRepository repository;
+
+	@Mock
+	private HoldRepository holdRepository;
+
+	@InjectMocks
+	private OccupancyCalendar calendar;
+
+	private FreeWindowIndex index;
+
+	@BeforeEach
+	public void setUp() {
+		this.calendar.load();
+		this.index = new FreeWindowIndex(this.calendar);
+	}
+
+	@Test
+	public void skipsNightsAdjacentToAStay() {
+		this.calendar.book(SITE, today.plusDays(2), today.plusDays(4));
+
+		// check-in on the day another stay checks out, or check-out on the day it checks in, is not allowed
+		assertEquals(List.of(new DateRange(today.plusDays(5), today.plusDays(7)), new DateRange(today.plusDays(7), today.plusDays(9))),
+				this.index.findWindows(SITE, today.plusDays(1), 2, 2));
+		assertEquals(List.of(new DateRange(today, today.plusDays(1))), this.index.findWindows(SITE, today, 1, 1));
+	}
+
+	@Test
+	public void followsCalendarChanges() {
+		this.calendar.book(SITE, today.plusDays(2), today.plusDays(4));
+		this.calendar.move(SITE, today.plusDays(2), today.plusDays(4), today.plusDays(10), today.plusDays(12));
+		assertEquals(List.of(new DateRange(today.plusDays(1), today.plusDays(4))), this.index.findWindows(SITE, today.plusDays(1), 3, 1));
+
+		this.calendar.release(SITE, today.plusDays(10), today.plusDays(12));
+		assertEquals(List.of(new DateRange(today.plusDays(8), today.plusDays(11))), this.index.findWindows(SITE, today.plusDays(8), 3, 1));
+	}
+
+	@Test
+	public void sitesHaveTheirOwnWindows() {
+		assertEquals(List.of(new DateRange(today, today.plusDays(3))), this.index.findWindows("lake", today, 3, 1));
+
+		this.calendar.book("lake", today, today.plusDays(3));
+
+		assertEquals(List.of(new DateRange(today.plusDays(4), today.plusDays(7))), this.index.findWindows("lake", today, 3, 1));
+		assertEquals(List.of(new DateRange(today, today.plusDays(3))), this.index.findWindows(SITE, today, 3, 1));
+	}
+
+	@Test
+	public void unknownSitesAreSearchedWithoutATree() {
+		assertEquals(List.of(new DateRange(today, today.plusDays(2)), new DateRange(today.plusDays(2), today.plusDays(4))),
+				this.index.findWindows("nowhere", today, 2, 2));
+		assertEquals(0, this.index.treeCount());
+	}
+
+	@Test
+	public void matchesAScanOfTheCalendar() {
+		Random random = new Random(42);
+		for (int i = 0; i < 300; i++) {
+			LocalDate checkIn = today.plusDays(random.nextInt(2000));
+			if (!this.calendar.isOccupied(SITE, checkIn) && !this.calendar.isOccupied(SITE, checkIn.plusDays(1))) {
+				this.calendar.book(SITE, checkIn, checkIn.plusDays(1 + random.nextInt(3)));
+			}
+		}
+
+		for (int nights = 1; nights <= 6; nights++) {
+			assertEquals(scan(today, nights, 50), this.index.findWindows(SITE, today, nights, 50), "nights=" + nights);
+		}
+	}
+
+	private List<DateRange> scan(LocalDate dateFrom, int nights, int limit) {
+		List<DateRange> windows = new ArrayList<>();
+		LocalDate checkIn = dateFrom;
+		while (windows.size() < limit) {
+			boolean free = true;
+			for (LocalDate night = checkIn.minusDays(1); free && !night.isAfter(checkIn.plusDays(nights)); night = night.plusDays(1)) {
+				free = !this.calendar.isOccupied(SITE, night);
+			}
+			if (free) {
+				windows.add(new DateRange(checkIn, checkIn.plusDays(nights)));
+				checkIn = checkIn.plusDays(nights);
+			} else {
+				checkIn = checkIn.plusDays(1);
+			}
+		}
+		return windows;
+	}
+}
@@ -0,0 +1,88 @@
+package com.nitzer.campsitereservation.services;
+
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.nitzer.campsitereservation.entities.Hold;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.HoldNotFoundException;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+@SharedServiceContext
+class HoldServiceTests {
+
+	private static final String SITE = "holds";
+
+	private LocalDate start = LocalDate.now().plusDays(5);
+
+	@Autowired
+	private HoldService holdService;
+
+	@Autowired
+	private ReservationService reservationService;
+
+	@Autowired
+	private HoldRepository holdRepository;
+
+	@Autowired
+	private ReservationRepository reservationRepository;
+
+	@Test
+	public void holdBlocksDatesUntilItExpires() throws InterruptedException {
+		Hold hold = this.holdService.hold(reservation(SITE, start, start.plusDays(2)));
+
+		assertTrue(this.reservationService.getAvailableDates(SITE, start, start.plusDays(2)).isEmpty());
+		assertTrue(this.reservationRepository.existsOverlappingReservation(SITE, start, start.plusDays(1), null));
+		assertThrows(OverlappingDatesException.class, () -> this.reservationService.reserve(reservation(SITE, start.plusDays(1), start.plusDays(3))));
+
+		awaitReleased(hold);
+		assertEquals(2, this.reservationService.getAvailableDates(SITE, start, start.plusDays(2)).size());
+		assertFalse(this.reservationRepository.existsOverlappingReservation(SITE, start, start.plusDays(1), null));
+		assertThrows(HoldNotFoundException.class, () -> this.holdService.confirm(hold.getId()));
+	}
+
+	@Test
+	public void confirmedHoldBecomesAReservation() throws InterruptedException {
+		LocalDate from = start.plusDays(5);
+		Hold hold = this.holdService.hold(reservation(SITE, from, from.plusDays(1)));
+
+		Reservation reservation = this.holdService.confirm(hold.getId());
+		Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+
+		assertFalse(this.holdRepository.existsById(hold.getId()));
+		assertTrue(this.reservationRepository.existsById(reservation.getId()));
+		assertTrue(this.reservationService.getAvailableDates(SITE, from, from.plusDays(1)).isEmpty());
+		this.reservationService.cancel(reservation.getId());
+	}
+
+	@Test
+	public void recoveredHoldsExpire() throws InterruptedException {
+		LocalDate from = start.plusDays(10);
+		Hold hold = this.holdRepository.save(new Hold(reservation(SITE, from, from.plusDays(1)), Instant.now().minusSeconds(60)));
+
+		this.holdService.recover();
+
+		awaitReleased(hold);
+	}
+
+	private void awaitReleased(Hold hold) throws InterruptedException {
+		// the calendar is updated right after the release commits
+		for (int i = 0; i < 100 && (this.holdRepository.existsById(hold.getId())
+				|| this.reservationService.getAvailableDates(hold.getSiteId(), hold.getCheckInDate(), hold.getCheckOutDate()).isEmpty()); i++) {
+			Thread.sleep(50);
+		}
+		assertFalse(this.holdRepository.existsById(hold.getId()));
+	}
+}
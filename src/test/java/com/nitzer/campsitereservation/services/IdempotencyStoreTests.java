@@ -0,0 +1,74 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import com.nitzer.campsitereservation.exceptions.IdempotencyKeyReusedException;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IdempotencyStoreTests {
+
+	private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private IdempotencyStore store = new IdempotencyStore(this.registry, 100, Duration.ofMinutes(1));
+
+	@Test
+	public void concurrentDuplicatesWaitForTheOriginal() throws Exception {
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<String> original = CompletableFuture.supplyAsync(() -> this.store.execute("k", "body", () -> {
+			runs.incrementAndGet();
+			started.countDown();
+			await(release);
+			return "created";
+		}));
+		started.await(5, TimeUnit.SECONDS);
+		CompletableFuture<String> duplicate = CompletableFuture.supplyAsync(() -> this.store.execute("k", "body", () -> {
+			runs.incrementAndGet();
+			return "again";
+		}));
+
+		release.countDown();
+		assertEquals("created", original.get(5, TimeUnit.SECONDS));
+		assertEquals("created", duplicate.get(5, TimeUnit.SECONDS));
+		assertEquals(1, runs.get());
+		assertEquals(1.0, this.registry.get("reservation.idempotency.replayed").counter().count());
+		assertThrows(IdempotencyKeyReusedException.class, () -> this.store.execute("k", "other body", () -> "other"));
+	}
+
+	@Test
+	public void keepsConflictsButForgetsTransientFailures() {
+		LocalDate today = LocalDate.now();
+		assertThrows(OverlappingDatesException.class, () -> this.store.execute("conflict", "body", () -> {
+			throw new OverlappingDatesException(today, today.plusDays(1));
+		}));
+		assertThrows(OverlappingDatesException.class, () -> this.store.execute("conflict", "body", () -> "not run"));
+
+		assertThrows(TransientDataAccessResourceException.class, () -> this.store.execute("transient", "body", () -> {
+			throw new TransientDataAccessResourceException("busy");
+		}));
+		assertEquals("retried", this.store.execute("transient", "body", () -> "retried"));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
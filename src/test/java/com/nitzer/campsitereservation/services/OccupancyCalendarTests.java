@@ -0,0 +1,107 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.nitzer.campsitereservation.dto.DateRange;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.HoldRepository;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+@ExtendWith(MockitoExtension.class)
+class OccupancyCalendarTests {
+
+	private static final String SITE = Reservation.DEFAULT_SITE;
+
+	private LocalDate today = LocalDate.now();
+
+	@Mock
+	private ReservationRepository repository;
+
+	@Mock
+	private HoldRepository holdRepository;
+
+	@InjectMocks
+	private OccupancyCalendar calendar;
+
+	@BeforeEach
+	public void setUp() {
+		Reservation reservation = new Reservation();
+		reservation.setCheckInDate(today.plusDays(2));
+		reservation.setCheckOutDate(today.plusDays(4));
+		when(this.repository.findAll()).thenReturn(List.of(reservation));
+		this.calendar.load();
+	}
+
+	@Test
+	public void loadsOccupiedNightsFromRepository() {
+		List<LocalDate> free = this.calendar.getFreeNights(SITE, today, today.plusDays(6));
+
+		assertEquals(List.of(today, today.plusDays(1), today.plusDays(4), today.plusDays(5)), free);
+	}
+
+	@Test
+	public void bookMoveAndRelease() {
+		this.calendar.book(SITE, today.plusDays(5), today.plusDays(6));
+		assertTrue(this.calendar.isOccupied(SITE, today.plusDays(5)));
+		assertFalse(this.calendar.isOccupied(SITE, today.plusDays(6)));
+
+		this.calendar.move(SITE, today.plusDays(5), today.plusDays(6), today, today.plusDays(1));
+		assertFalse(this.calendar.isOccupied(SITE, today.plusDays(5)));
+		assertTrue(this.calendar.isOccupied(SITE, today));
+
+		this.calendar.release(SITE, today.plusDays(2), today.plusDays(4));
+		assertEquals(5, this.calendar.getFreeNights(SITE, today, today.plusDays(6)).size());
+	}
+
+	@Test
+	public void freeRangesSkipOccupiedRuns() {
+		this.calendar.book(SITE, today.plusDays(6), today.plusDays(7));
+
+		List<DateRange> free = this.calendar.getFreeRanges(SITE, today, today.plusDays(10));
+
+		assertEquals(List.of(new DateRange(today, today.plusDays(2)),
+				new DateRange(today.plusDays(4), today.plusDays(6)),
+				new DateRange(today.plusDays(7), today.plusDays(10))), free);
+		assertEquals(List.of(), this.calendar.getFreeRanges(SITE, today.plusDays(2), today.plusDays(4)));
+	}
+
+	@Test
+	public void freeBitmapIsRelativeToDateFrom() {
+		BitSet free = this.calendar.getFreeBitmap(SITE, today.plusDays(1), today.plusDays(6));
+
+		assertTrue(free.get(0));
+		assertFalse(free.get(1));
+		assertFalse(free.get(2));
+		assertEquals(3, free.cardinality());
+	}
+
+	@Test
+	public void sitesHaveTheirOwnNightsAndVersion() {
+		String siteVersion = this.calendar.getVersionTag(SITE);
+
+		this.calendar.book("lake", today.plusDays(2), today.plusDays(4));
+
+		assertTrue(this.calendar.isOccupied("lake", today.plusDays(3)));
+		assertFalse(this.calendar.isOccupied("lake", today.plusDays(5)));
+		assertFalse(this.calendar.isOccupied("forest", today.plusDays(3)));
+		assertEquals(siteVersion, this.calendar.getVersionTag(SITE));
+		assertNotEquals(0, this.calendar.getVersion("lake"));
+		assertEquals(Set.of(SITE, "lake"), this.calendar.getSites());
+	}
+}
@@ -0,0 +1,81 @@
+package com.nitzer.campsitereservation.services;
+
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+@SharedServiceContext
+class ReservationArchiverTests {
+
+	private static final String SITE = "archive";
+
+	private LocalDate start = LocalDate.now().plusDays(10);
+
+	@Autowired
+	private ReservationArchiver archiver;
+
+	@Autowired
+	private ReservationService service;
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Autowired
+	private OccupancyCalendar calendar;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void cancelledAndCheckedOutReservationsAreMovedInBatches() {
+		// what the other tests sharing the database left to archive
+		this.archiver.archive(start.plusDays(4));
+
+		Reservation first = this.service.reserve(reservation(SITE, start, start.plusDays(1)));
+		Reservation second = this.service.reserve(reservation(SITE, start.plusDays(2), start.plusDays(3)));
+		Reservation later = this.service.reserve(reservation(SITE, start.plusDays(10), start.plusDays(11)));
+		Reservation cancelled = this.service.reserve(reservation(SITE, start.plusDays(12), start.plusDays(13)));
+		this.service.cancel(cancelled.getId());
+
+		// cancelled, but still in bookings until it is archived
+		assertThrows(ReservationNotFoundException.class, () -> this.service.getOne(cancelled.getId()));
+		assertThrows(ReservationNotFoundException.class, () -> this.service.cancel(cancelled.getId()));
+		assertFalse(this.repository.existsOverlappingReservation(SITE, start.plusDays(12), start.plusDays(13), null));
+		assertEquals("CANCELLED", status("bookings", cancelled));
+
+		// as if it were run the day after the second check-out, over two batches and a last empty one
+		assertEquals(3, this.archiver.archive(start.plusDays(4)));
+
+		assertEquals("CHECKED_OUT", status("bookings_archive", first));
+		assertEquals("CHECKED_OUT", status("bookings_archive", second));
+		assertEquals("CANCELLED", status("bookings_archive", cancelled));
+		assertEquals(List.of(later), this.repository.findByDateInterval(SITE, start, start.plusDays(20)));
+		assertEquals(0, this.jdbcTemplate.queryForObject("SELECT count(*) from booked_dates WHERE reservation_id in (?, ?)", Integer.class,
+				first.getId(), second.getId()));
+		assertEquals(0, this.archiver.archive(start.plusDays(4)));
+		// the calendar agrees with a reload from the repository, which no longer has the checked-out nights
+		assertFalse(this.calendar.isOccupied(SITE, start));
+		assertFalse(this.calendar.isOccupied(SITE, start.plusDays(2)));
+		assertTrue(this.calendar.isOccupied(SITE, start.plusDays(10)));
+
+		// the cancelled dates can be reserved again
+		assertTrue(this.service.reserve(reservation(SITE, start.plusDays(12), start.plusDays(13))).getId() != null);
+	}
+
+	private String status(String table, Reservation reservation) {
+		return this.jdbcTemplate.queryForObject("SELECT status from " + table + " WHERE id = ?", String.class, reservation.getId());
+	}
+}
@@ -0,0 +1,81 @@
+package com.nitzer.campsitereservation.services;
+
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.nitzer.campsitereservation.dto.BatchItemResult;
+import com.nitzer.campsitereservation.dto.BatchMode;
+import com.nitzer.campsitereservation.dto.BatchResult;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+@SharedServiceContext
+class ReservationBatchTests {
+
+	private static final String SITE = "batch";
+
+	private LocalDate start = LocalDate.now().plusDays(2);
+
+	@Autowired
+	private ReservationService service;
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Test
+	public void atomicBatchMakesNothingWhenAnItemFails() {
+		long before = this.repository.count();
+
+		BatchResult result = this.service.reserveBatch(List.of(
+				reservation(SITE, start, start.plusDays(2)),
+				reservation(SITE, start.plusDays(2), start.plusDays(3)),
+				reservation(SITE, start.plusDays(5), start.plusDays(9))), BatchMode.ATOMIC);
+
+		assertEquals(List.of(424, 409, 400), statuses(result));
+		assertEquals(0, result.getCreated());
+		assertEquals(before, this.repository.count());
+	}
+
+	@Test
+	public void bestEffortBatchMakesWhatItCan() {
+		LocalDate from = start.plusDays(10);
+		Reservation existing = this.service.reserve(reservation(SITE, from.plusDays(8), from.plusDays(9)));
+
+		BatchResult result = this.service.reserveBatch(List.of(
+				reservation(SITE, from, from.plusDays(2)),
+				reservation(SITE, from.plusDays(1), from.plusDays(2)),
+				reservation(SITE, from.plusDays(3), from.plusDays(7)),
+				reservation(SITE, from.plusDays(4), from.plusDays(6)),
+				reservation(SITE, from.plusDays(7), from.plusDays(8))), BatchMode.BEST_EFFORT);
+
+		assertEquals(List.of(201, 409, 400, 201, 409), statuses(result));
+		assertEquals(2, result.getCreated());
+		assertTrue(this.repository.existsById(result.getItems().get(3).getReservation().getId()));
+		assertTrue(this.service.getAvailableDates(SITE, from, from.plusDays(2)).isEmpty());
+		this.service.cancel(existing.getId());
+	}
+
+	@Test
+	public void atomicBatchMakesEveryReservation() {
+		LocalDate from = start.plusDays(20);
+
+		BatchResult result = this.service.reserveBatch(List.of(
+				reservation(SITE, from.plusDays(3), from.plusDays(4)),
+				reservation(SITE, from, from.plusDays(2))), BatchMode.ATOMIC);
+
+		assertEquals(List.of(201, 201), statuses(result));
+		assertEquals(List.of(from.plusDays(2)), this.service.getAvailableDates(SITE, from, from.plusDays(4)));
+	}
+
+	private static List<Integer> statuses(BatchResult result) {
+		return result.getItems().stream().map(BatchItemResult::getStatus).collect(Collectors.toList());
+	}
+}
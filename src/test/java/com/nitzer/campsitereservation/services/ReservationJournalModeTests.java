@@ -0,0 +1,64 @@
+package com.nitzer.campsitereservation.services;
+
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import com.nitzer.campsitereservation.controllers.HoldController;
+import com.nitzer.campsitereservation.dto.BatchMode;
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+@SpringBootTest(properties = { "reservation.write-mode=journal", "reservation.journal.path=target/journal-tests/${random.uuid}.journal",
+		"spring.datasource.url=jdbc:h2:mem:journal" })
+class ReservationJournalModeTests {
+
+	private LocalDate start = LocalDate.now().plusDays(10);
+
+	@Autowired
+	private ReservationService service;
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Autowired
+	private OccupancyCalendar calendar;
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Test
+	public void writesGoToTheJournalAndTheCalendarFollows() {
+		Reservation created = this.service.reserve(reservation(Reservation.DEFAULT_SITE, "journal@test.com", start, start.plusDays(2)));
+		assertThrows(OverlappingDatesException.class, () -> this.service.reserve(reservation(Reservation.DEFAULT_SITE, "journal@test.com", start.plusDays(2), start.plusDays(3))));
+		assertTrue(this.calendar.isOccupied(Reservation.DEFAULT_SITE, start));
+
+		Reservation moved = this.service.update(reservation(Reservation.DEFAULT_SITE, "journal@test.com", start.plusDays(4), start.plusDays(6)), created.getId());
+		assertEquals(start.plusDays(4), this.service.getOne(created.getId()).getCheckInDate());
+		assertEquals(moved, this.service.getPage(Reservation.DEFAULT_SITE, start, start.plusDays(30), null, null, 10).getItems().get(0));
+		assertFalse(this.calendar.isOccupied(Reservation.DEFAULT_SITE, start));
+		assertEquals(List.of(moved), this.service.getByEmail("Journal@Test.com"));
+		assertEquals(List.of(moved), this.service.getPage(null, start, start.plusDays(30), "Journal@Test.com", null, 10).getItems());
+		assertEquals(1, this.service.reserveBatch(List.of(reservation(Reservation.DEFAULT_SITE, "journal@test.com", start, start.plusDays(1)), reservation(Reservation.DEFAULT_SITE, "journal@test.com", start.plusDays(5), start.plusDays(7))),
+				BatchMode.BEST_EFFORT).getCreated());
+
+		this.service.cancel(created.getId());
+		assertThrows(ReservationNotFoundException.class, () -> this.service.getOne(created.getId()));
+		assertFalse(this.calendar.isOccupied(Reservation.DEFAULT_SITE, start.plusDays(4)));
+		assertEquals(0, this.repository.count());
+		assertTrue(this.context.getBeansOfType(HoldController.class).isEmpty());
+		assertTrue(this.context.getBeansOfType(HoldService.class).isEmpty());
+	}
+}
@@ -0,0 +1,69 @@
+package com.nitzer.campsitereservation.services;
+
+import static com.nitzer.campsitereservation.TestReservations.reservation;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nitzer.campsitereservation.entities.Reservation;
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+import com.nitzer.campsitereservation.exceptions.ReservationNotFoundException;
+import com.nitzer.campsitereservation.repositories.ReservationRepository;
+
+@SpringBootTest(properties = { "reservation.write-mode=sequencer", "spring.datasource.url=jdbc:h2:mem:sequencer" })
+class ReservationSequencerTests {
+
+	private LocalDate start = LocalDate.now().plusDays(10);
+
+	@Autowired
+	private ReservationSequencer sequencer;
+
+	@Autowired
+	private ReservationService service;
+
+	@Autowired
+	private ReservationRepository repository;
+
+	@Test
+	public void acceptsOneOfManyConflictingReservations() {
+		List<CompletableFuture<Reservation>> results = IntStream.range(0, 20)
+				.mapToObj(i -> this.sequencer.submit(ReservationCommand.reserve(reservation(Reservation.DEFAULT_SITE, start, start.plusDays(2)))))
+				.collect(Collectors.toList());
+
+		long created = results.stream().filter(r -> {
+			try {
+				return r.join().getId() != null;
+			} catch (CompletionException e) {
+				assertTrue(e.getCause() instanceof OverlappingDatesException);
+				return false;
+			}
+		}).count();
+
+		assertEquals(1, created);
+	}
+
+	@Test
+	public void appliesUpdatesAndCancelsThroughTheQueue() {
+		LocalDate from = start.plusDays(10);
+		Reservation created = this.service.reserve(reservation(Reservation.DEFAULT_SITE, from, from.plusDays(1)));
+
+		Reservation moved = this.service.update(reservation(Reservation.DEFAULT_SITE, from.plusDays(1), from.plusDays(3)), created.getId());
+		assertEquals(from.plusDays(1), moved.getCheckInDate());
+		assertEquals(from.plusDays(3), this.repository.findById(created.getId()).get().getCheckOutDate());
+
+		this.service.cancel(created.getId());
+		assertThrows(ReservationNotFoundException.class, () -> this.service.cancel(created.getId()));
+		assertEquals(3, this.service.getAvailableDates(Reservation.DEFAULT_SITE, from, from.plusDays(3)).size());
+	}
+}
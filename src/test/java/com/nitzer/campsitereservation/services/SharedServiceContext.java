@@ -0,0 +1,21 @@
+package com.nitzer.campsitereservation.services;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/*
+ * One application context and database for the service tests in the default write mode.
+ * The properties are the union of what those tests need, so Spring caches a single context
+ * for all of them; each test class books on its own sites to stay out of the others' way.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@SpringBootTest(properties = { "reservation.hold.ttl=PT0.5S", "reservation.hold.tick=PT0.05S", "reservation.archive.interval=PT0S",
+		"reservation.archive.batch-size=2", "reservation.snapshot.enabled=true", "reservation.snapshot.path=target/snapshot-tests/calendar.snapshot",
+		"reservation.snapshot.interval=PT0S", "spring.datasource.url=jdbc:h2:mem:services" })
+@interface SharedServiceContext {
+}
@@ -0,0 +1,63 @@
+package com.nitzer.campsitereservation.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import com.nitzer.campsitereservation.exceptions.OverlappingDatesException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TransientFailureRetrierTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final TransientFailureRetrier retrier = new TransientFailureRetrier(registry, 3, 1, 5);
+
+	@Test
+	public void retriesLockFailures() {
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = this.retrier.execute("reserve", () -> {
+			if (calls.incrementAndGet() < 3) {
+				throw new CannotAcquireLockException("Timeout trying to lock table");
+			}
+			return "ok";
+		});
+
+		assertEquals("ok", result);
+		assertEquals(3, calls.get());
+		assertEquals(2.0, this.registry.get("reservation.retry.attempts").tag("operation", "reserve").counter().count());
+		assertEquals(1.0, this.registry.get("reservation.retry.recovered").counter().count());
+	}
+
+	@Test
+	public void doesNotRetryOverlappingDates() {
+		AtomicInteger calls = new AtomicInteger();
+
+		assertThrows(OverlappingDatesException.class, () -> this.retrier.execute("reserve", () -> {
+			calls.incrementAndGet();
+			throw new OverlappingDatesException(LocalDate.now(), LocalDate.now().plusDays(1));
+		}));
+
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void givesUpAfterMaxAttempts() {
+		AtomicInteger calls = new AtomicInteger();
+
+		assertThrows(CannotAcquireLockException.class, () -> this.retrier.execute("update", () -> {
+			calls.incrementAndGet();
+			throw new CannotAcquireLockException("Timeout trying to lock table");
+		}));
+
+		assertEquals(3, calls.get());
+		assertEquals(1.0, this.registry.get("reservation.retry.exhausted").tag("operation", "update").counter().count());
+	}
+}